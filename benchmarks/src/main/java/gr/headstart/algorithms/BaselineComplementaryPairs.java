@@ -0,0 +1,78 @@
+package gr.headstart.algorithms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The calculate of the first version of {@link ComplementaryPairs}, kept here unchanged as the baseline of
+ * the benchmarks since the library now delegates it to the primitive engine. The indices of every value are
+ * kept in a HashMap of boxed lists and each index is removed from its list with List.remove once it has
+ * been paired.
+ */
+public class BaselineComplementaryPairs {
+
+    public List calculate(int k, Integer[] integers) {
+
+        // check for null or empty input
+        if (integers == null || integers.length == 0) {
+            return null;
+        }
+
+        List<Pair> results = new ArrayList<>();
+
+        // we will use this map to store arrays of the indices of every unique value
+        Map<Integer, List<Integer>> valuesMap = new HashMap<>();
+
+        // iterate through the values and store indices in the corresponding lists
+        for (int i = 0; i < integers.length; i++){ // O(n)
+            if (valuesMap.containsKey(integers[i])){
+                List<Integer> indices = valuesMap.get(integers[i]); // O(1)
+                indices.add(i); // O(1)
+            } else {
+                List<Integer> indices = new ArrayList<>();
+                indices.add(i); // O(1)
+                valuesMap.put(integers[i], indices); // O(1)
+            }
+        }
+
+
+        for (int i = 0; i < integers.length; i++){ // O(n)
+            // find the complementary value
+            int complValue = k - integers[i];
+            // check if this value is stored in the Map
+            if (valuesMap.containsKey(complValue)){ // O(1)
+                // if it is, take the corresponding indeces and create the pairs
+                List<Integer> indices = valuesMap.get(complValue);
+                for (int j = 0; j < indices.size(); j++){ // O(n)
+                    // if value == complValue you will find the same index in the list. don't use it
+                    if (i != indices.get(j)){
+                        results.add(new Pair(i, indices.get(j))); // O(1)
+                    }
+                }
+
+                // find the index of the current element in the map and remove it, you don't need it
+                List valueIndices = valuesMap.get(integers[i]); // O(1)
+                valueIndices.remove(Integer.valueOf(i)); // O(1)
+            }
+        }
+
+        return results;
+    }
+
+    class Pair {
+        public Pair(int index1, int index2) {
+            this.firstIndex = index1;
+            this.lastIndex = index2;
+        }
+
+        int firstIndex;
+        int lastIndex;
+
+        @Override
+        public String toString() {
+            return "[" + firstIndex + "," + lastIndex + "]";
+        }
+    }
+}
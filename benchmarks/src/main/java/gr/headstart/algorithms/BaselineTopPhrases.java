@@ -0,0 +1,155 @@
+package gr.headstart.algorithms;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.stream.Stream;
+
+/**
+ * The find of the first version of {@link TopPhrases}, kept here as the baseline of the benchmarks since
+ * the library has replaced its trie. The file is read as text with Files.lines, every line is split with a
+ * regex and the phrases are inserted char by char in a trie of node objects with a HashMap of children
+ * each. The only change is that the stream of lines is closed, so that the iterations of a benchmark do not
+ * run out of file handles. An instance finds the top phrases of a single file.
+ */
+public class BaselineTopPhrases {
+
+    Trie trie = new Trie();
+    Queue<Phrase> priorityQueue = new PriorityQueue<>();
+
+    public Queue<Phrase> find(String filePath, int numOfTopElements) {
+        Path file = Paths.get(filePath);
+
+        //handle invalid inputs
+        if (file == null || !file.toFile().exists()){
+            return null;
+        }
+
+        if (numOfTopElements <= 0){
+            return null;
+        }
+
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            for (String line : (Iterable<String>) lines::iterator) {
+                String[] phrases = line.split("\\|");
+                for (String phrase : phrases) {
+                    // Insert each parsed phrase in the tree
+                    trie.insertToTrie(phrase);
+                }
+            }
+
+            // traverse all the trie nodes and reconstruct the phrases using a StringBuilder
+            // add the phrases to the priority queue, removing the smallest phrase count element
+            // if the one added has a higher phrase count
+            trie.findTopElements(numOfTopElements);
+
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+
+        return priorityQueue;
+    }
+
+    class Trie {
+        Map<Character, TrieElement> children = new HashMap<>();
+        StringBuilder wordBuilder = new StringBuilder();
+
+        public void insertToTrie(String phrase) {
+            if (phrase != null && phrase.length() > 0) {
+                // find or create the appropriate element for the first char
+                char first = phrase.charAt(0);
+                if (!trie.children.containsKey(first)) {
+                    trie.children.put(first, new TrieElement(first));
+                }
+
+                TrieElement child = trie.children.get(first);
+                // invoke the actual recursive function
+                child.insert(phrase, 1);
+            }
+        }
+
+        public void findTopElements(int numOfTopElements) {
+            for (TrieElement element : children.values()) {
+                // invoke the "traverse and add" recursive function
+                element.addToQueue(wordBuilder, numOfTopElements);
+            }
+        }
+    }
+
+    class TrieElement {
+        char character;
+        long phraseCount = 0;
+        Map<Character, TrieElement> children = new HashMap<>();
+
+        public TrieElement(char character) {
+            this.character = character;
+        }
+
+        public void insert(String phrase, int i) {
+            if (phrase.length() >= i + 1) {
+                // if there are more chars in the phrase invoke the recursive
+                // function of the correct child
+                char c = phrase.charAt(i);
+                if (!children.containsKey(c)) {
+                    children.put(c, new TrieElement(c));
+                }
+
+                TrieElement child = children.get(c);
+                child.insert(phrase, i + 1);
+            } else {
+                //increment the counter and return
+                phraseCount++;
+            }
+        }
+
+        public void addToQueue(StringBuilder wordBuilder, int topElements) {
+            wordBuilder.append(character);
+            if (phraseCount > 0) {
+                if (priorityQueue.size() >= topElements) {
+                    Phrase minOccurrencesPhrase = priorityQueue.peek();
+                    if (minOccurrencesPhrase.phraseCount < phraseCount) {
+                        priorityQueue.add(new Phrase(phraseCount, wordBuilder.toString()));
+                        priorityQueue.poll();
+                    }
+                } else {
+                    priorityQueue.add(new Phrase(phraseCount, wordBuilder.toString()));
+                }
+            }
+            for (TrieElement element : children.values()) {
+                element.addToQueue(wordBuilder, topElements);
+
+            }
+            // we don't need these anymore...
+            children.clear();
+
+            wordBuilder.deleteCharAt(wordBuilder.length() - 1);
+        }
+    }
+
+    class Phrase implements Comparable {
+        long phraseCount;
+        String phrase;
+
+        public Phrase(long phraseCount, String phrase) {
+            this.phraseCount = phraseCount;
+            this.phrase = phrase;
+        }
+
+        @Override
+        public int compareTo(Object o) {
+            Phrase phrase = (Phrase) o;
+            return this.phraseCount > phrase.phraseCount ? 1 : (this.phraseCount < phrase.phraseCount ? -1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return "{" + phrase +" : " + phraseCount + '}';
+        }
+    }
+}
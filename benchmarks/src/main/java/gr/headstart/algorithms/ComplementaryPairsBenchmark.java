@@ -0,0 +1,95 @@
+package gr.headstart.algorithms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first version of calculate, kept in {@link BaselineComplementaryPairs}, against the boxed calculate
+ * of today, which is the primitive engine behind a boxed signature, the primitive engine itself, the
+ * streaming and the counting modes and a prebuilt index. The values are drawn from size * (1 - duplicateRatio) distinct
+ * values around 0 and k is 0, so the number of pairs grows with the duplicates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComplementaryPairsBenchmark {
+
+    private static final int K = 0;
+
+    @Param({"1000", "100000"})
+    int size;
+
+    @Param({"0.0", "0.9", "0.99"})
+    double duplicateRatio;
+
+    private final BaselineComplementaryPairs baseline = new BaselineComplementaryPairs();
+    private final ComplementaryPairs complementaryPairs = new ComplementaryPairs();
+
+    private int[] values;
+    private Integer[] boxedValues;
+    private ComplementaryPairsIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int distinct = (int) Math.max(1, size * (1 - duplicateRatio));
+        values = new int[size];
+        boxedValues = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt(distinct) - distinct / 2;
+            boxedValues[i] = values[i];
+        }
+        index = new ComplementaryPairsIndex(values);
+    }
+
+    @Benchmark
+    public List baseline() {
+        return baseline.calculate(K, boxedValues);
+    }
+
+    @Benchmark
+    public List calculateBoxed() {
+        return complementaryPairs.calculate(K, boxedValues);
+    }
+
+    @Benchmark
+    public ComplementaryPairs.PairBuffer calculatePairs() {
+        return complementaryPairs.calculatePairs(K, values);
+    }
+
+    @Benchmark
+    public long forEachPair() {
+        long[] sum = new long[1];
+        complementaryPairs.forEachPair(K, values, (first, second) -> {
+            sum[0] += first ^ second;
+            return true;
+        });
+        return sum[0];
+    }
+
+    @Benchmark
+    public long count() {
+        return complementaryPairs.count(K, values);
+    }
+
+    @Benchmark
+    public long countWithIndex() {
+        return index.count(K);
+    }
+}
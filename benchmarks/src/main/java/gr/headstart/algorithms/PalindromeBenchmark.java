@@ -0,0 +1,82 @@
+package gr.headstart.algorithms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The String check, which is the baseline, against the checks of bytes 8 at a time and the checks with
+ * options. The candidates are palindromes, so every check goes through the whole input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PalindromeBenchmark {
+
+    @Param({"16", "1024", "1048576"})
+    int length;
+
+    private final Palindrome palindrome = new Palindrome();
+    private final Palindrome relaxed = new Palindrome(Palindrome.Option.IGNORE_CASE,
+            Palindrome.Option.ALPHANUMERIC_ONLY);
+    private final PalindromicSubstrings palindromicSubstrings = new PalindromicSubstrings();
+
+    private String string;
+    private byte[] bytes;
+    private ByteBuffer directBuffer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        char[] chars = new char[length];
+        for (int i = 0; i < (length + 1) / 2; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+            chars[length - 1 - i] = chars[i];
+        }
+        string = new String(chars);
+        bytes = string.getBytes(StandardCharsets.US_ASCII);
+        directBuffer = ByteBuffer.allocateDirect(length);
+        directBuffer.put(bytes).flip();
+    }
+
+    @Benchmark
+    public boolean checkString() {
+        return palindrome.check(string);
+    }
+
+    @Benchmark
+    public boolean checkBytes() {
+        return palindrome.check(bytes);
+    }
+
+    @Benchmark
+    public boolean checkDirectBuffer() {
+        return palindrome.check(directBuffer);
+    }
+
+    @Benchmark
+    public boolean checkStringWithOptions() {
+        return relaxed.check(string);
+    }
+
+    @Benchmark
+    public long countPalindromicSubstrings() {
+        return palindromicSubstrings.analyze(string).count();
+    }
+}
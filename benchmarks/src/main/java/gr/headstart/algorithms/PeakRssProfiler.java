@@ -0,0 +1,53 @@
+package gr.headstart.algorithms;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Reports the peak resident set size of the benchmark JVM, the VmHWM line of /proc/self/status, after
+ * every iteration. The heap is only a part of the memory, the mapped files and the direct buffers count
+ * too and only the RSS shows them. Linux only, on other systems it reports nothing.
+ *
+ * Use it with -prof gr.headstart.algorithms.PeakRssProfiler.
+ */
+public class PeakRssProfiler implements InternalProfiler {
+
+    @Override
+    public String getDescription() {
+        return "Peak resident set size of the benchmark JVM";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+                                                       IterationParams iterationParams, IterationResult result) {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmHWM:")) {
+                    // VmHWM:    123456 kB
+                    double kilobytes = Double.parseDouble(line.substring(6).trim().split("\\s+")[0]);
+                    return Collections.singletonList(
+                            new ScalarResult("rss.peak", kilobytes / 1024, "MB", AggregationPolicy.MAX));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not on Linux, nothing to report
+        }
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,87 @@
+package gr.headstart.algorithms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first version of find, kept in {@link BaselineTopPhrases}, and the modes of TopPhrases over Zipfian
+ * phrase files of increasing size, written by the {@link PhraseFileGenerator}. The files are generated once
+ * per trial in the temporary directory and deleted at the end. The seed and the lengths of the phrases are the defaults of TopPhrasesScaleTest, so
+ * a file of the benchmark is the file of the scale test with the same size, distinct phrases and skew.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TopPhrasesBenchmark {
+
+    private static final int TOP = 1000;
+
+    @Param({"1", "16", "128"})
+    int megabytes;
+
+    @Param({"100000"})
+    int distinctPhrases;
+
+    @Param({"1.1"})
+    double skew;
+
+    private final TopPhrases topPhrases = new TopPhrases();
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("top-phrases-benchmark", ".txt");
+        new PhraseFileGenerator(42, distinctPhrases, skew, 3, 40).generate(file, megabytes * 1024L * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Queue<?> baseline() {
+        return new BaselineTopPhrases().find(file.toString(), TOP);
+    }
+
+    @Benchmark
+    public Queue<TopPhrases.Phrase> find() {
+        return topPhrases.find(file.toString(), TOP);
+    }
+
+    @Benchmark
+    public Queue<TopPhrases.Phrase> findParallel() {
+        return topPhrases.findParallel(file.toString(), TOP);
+    }
+
+    @Benchmark
+    public Queue<TopPhrases.Phrase> findExternal() {
+        return topPhrases.findExternal(file.toString(), TOP, 64L * 1024 * 1024);
+    }
+
+    @Benchmark
+    public Queue<TopPhrases.Phrase> findApproximate() {
+        return topPhrases.findApproximate(file.toString(), TOP, 0.0001);
+    }
+}
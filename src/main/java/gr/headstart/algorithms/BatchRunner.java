@@ -0,0 +1,333 @@
+package gr.headstart.algorithms;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs many queries in a single JVM. Each of the main methods of this project reads a single line from the
+ * console and logs its answer, so asking a hundred questions means starting a hundred JVMs and parsing their
+ * logs. Starting the JVM and warming up the JIT takes longer than most of the queries themselves.
+ *
+ * The runner reads jobs, one per line, from a file or from the console and runs them on a shared executor,
+ * so the same warmed up code answers all of them. When reading from the console it keeps running as long as
+ * new lines arrive, so it can be used as a small daemon that another process feeds through a pipe. A job is
+ * one of
+ *
+ *   palindrome text                                 checks if the rest of the line is a palindrome
+ *   pairs k v1 v2 ...                               the K-complementary pairs of the values
+ *   count-pairs k v1 v2 ...                         the number of K-complementary pairs of the values
+ *   top file n [parallel | approximate epsilon]     the top n phrases of the file, exact by default
+ *
+ * Empty lines and lines starting with '#' are skipped. The id of a job is its line number.
+ *
+ * The result of every job is written as soon as it is done, so the results come in the order the jobs
+ * finish and not in the order they were given. They are written either as JSON lines
+ *
+ *   {"id":1,"job":"palindrome","status":"ok","micros":12,"result":true}
+ *
+ * or as CSV with the columns id, job, status, micros and result, where the result is the same JSON value.
+ * A job that fails gets the status "error" and the message instead of its result.
+ *
+ * The jobs run on virtual threads when the JDK has them, Java 21 and later. The project is compiled for
+ * Java 8, so they are created through reflection and a fixed pool of one thread per core is used otherwise.
+ * At most MAX_IN_FLIGHT jobs are waiting or running at any time, so a huge file of jobs is not read into
+ * memory at once.
+ */
+public final class BatchRunner implements AutoCloseable {
+    private final static Logger logger = Logger.getLogger(BatchRunner.class.getName());
+
+    public enum Format {
+        JSON, CSV
+    }
+
+    static final int MAX_IN_FLIGHT = 1024;
+
+    private final Format format;
+    private final ExecutorService executor;
+
+    // none of them keeps any state between calls, so they are shared by all the jobs
+    private final Palindrome palindrome = new Palindrome();
+    private final ComplementaryPairs complementaryPairs = new ComplementaryPairs();
+    private final TopPhrases topPhrases = new TopPhrases();
+
+    /**
+     * @param threads the number of threads of the pool, 0 or less for virtual threads when available
+     */
+    public BatchRunner(Format format, int threads) {
+        this.format = format;
+        this.executor = newExecutor(threads);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // read the arguments as "[--format json|csv] [--threads n] [jobs file]", the console when there is no file
+        Format format = Format.JSON;
+        int threads = 0;
+        String jobsFile = "-";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--format") && i + 1 < args.length) {
+                format = Format.valueOf(args[++i].toUpperCase());
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                jobsFile = args[i];
+            }
+        }
+
+        Writer output = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        try (BatchRunner runner = new BatchRunner(format, threads);
+             Reader jobs = jobsFile.equals("-")
+                     ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                     : Files.newBufferedReader(Paths.get(jobsFile), StandardCharsets.UTF_8)) {
+            long count = runner.run(jobs, output);
+            logger.info("Jobs: " + count);
+        }
+    }
+
+    /**
+     * Runs all the jobs of the reader and writes their results to the output. Returns when all of them are
+     * done, with the number of jobs.
+     */
+    public long run(Reader jobs, Writer output) throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        IOException[] outputError = new IOException[1];
+        if (format == Format.CSV) {
+            write(output, "id,job,status,micros,result", outputError);
+        }
+
+        BufferedReader reader = jobs instanceof BufferedReader ? (BufferedReader) jobs : new BufferedReader(jobs);
+        long id = 0;
+        long count = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            id++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            // only the space after the job is removed, the text of a palindrome may end with whitespace
+            String[] parts = line.substring(line.indexOf(trimmed)).split("\\s", 2);
+            String job = parts[0];
+            String arguments = parts.length > 1 ? parts[1] : "";
+            long jobId = id;
+            count++;
+            inFlight.acquire();
+            try {
+                executor.execute(() -> {
+                    try {
+                        write(output, execute(jobId, job, arguments), outputError);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        // all the permits are back when all the jobs are done
+        inFlight.acquire(MAX_IN_FLIGHT);
+        inFlight.release(MAX_IN_FLIGHT);
+        synchronized (outputError) {
+            if (outputError[0] != null) {
+                throw outputError[0];
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Runs a job and returns the line of its result.
+     */
+    String execute(long id, String job, String arguments) {
+        long start = System.nanoTime();
+        String status = "ok";
+        String result;
+        try {
+            result = parse(job, arguments).call();
+        } catch (Exception e) {
+            status = "error";
+            result = e.getMessage() == null ? e.toString() : e.getMessage();
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+
+        if (format == Format.CSV) {
+            return id + "," + csv(job) + "," + status + "," + micros + "," + csv(result);
+        }
+        return "{\"id\":" + id + ",\"job\":" + json(job) + ",\"status\":\"" + status + "\",\"micros\":" + micros
+                + (status.equals("ok") ? ",\"result\":" + result : ",\"error\":" + json(result)) + "}";
+    }
+
+    /**
+     * Returns the job as a call that gives its result as a JSON value. Throws IllegalArgumentException if
+     * the job is not valid.
+     */
+    Callable<String> parse(String job, String arguments) {
+        switch (job) {
+            case "palindrome":
+                return () -> String.valueOf(palindrome.check(arguments));
+            case "pairs": {
+                int[] values = values(arguments);
+                return () -> {
+                    ComplementaryPairs.PairBuffer pairs = complementaryPairs.calculatePairs(values[0],
+                            Arrays.copyOfRange(values, 1, values.length));
+                    // toString gives [[0,5], [0,7]], which is already JSON
+                    return pairs == null ? "[]" : pairs.toString();
+                };
+            }
+            case "count-pairs": {
+                int[] values = values(arguments);
+                return () -> String.valueOf(complementaryPairs.count(values[0],
+                        Arrays.copyOfRange(values, 1, values.length)));
+            }
+            case "top":
+                return top(arguments.trim().split("\\s+"));
+            default:
+                throw new IllegalArgumentException("Unknown job " + job);
+        }
+    }
+
+    private Callable<String> top(String[] arguments) {
+        if (arguments.length < 2) {
+            throw new IllegalArgumentException("Expected: top file n [parallel | approximate epsilon]");
+        }
+        String file = arguments[0];
+        int n = parseInt(arguments[1]);
+        String mode = arguments.length > 2 ? arguments[2] : "exact";
+        Callable<Queue<TopPhrases.Phrase>> run;
+        if (mode.equals("exact")) {
+            run = () -> topPhrases.find(file, n);
+        } else if (mode.equals("parallel")) {
+            run = () -> topPhrases.findParallel(file, n);
+        } else if (mode.equals("approximate") && arguments.length > 3) {
+            double epsilon = Double.parseDouble(arguments[3]);
+            run = () -> topPhrases.findApproximate(file, n, epsilon);
+        } else {
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+
+        return () -> {
+            Queue<TopPhrases.Phrase> results = run.call();
+            if (results == null) {
+                throw new IllegalArgumentException("Invalid file " + file + " or number of phrases " + n);
+            }
+            // the queue gives the worst phrase first, the best one is written first
+            List<TopPhrases.Phrase> phrases = new ArrayList<>(results.size());
+            while (!results.isEmpty()) {
+                phrases.add(results.poll());
+            }
+            Collections.reverse(phrases);
+
+            StringBuilder json = new StringBuilder("[");
+            for (TopPhrases.Phrase phrase : phrases) {
+                json.append(json.length() > 1 ? "," : "").append("{\"phrase\":").append(json(phrase.phrase))
+                        .append(",\"count\":").append(phrase.phraseCount);
+                if (phrase.error > 0) {
+                    json.append(",\"error\":").append(phrase.error);
+                }
+                json.append('}');
+            }
+            return json.append(']').toString();
+        };
+    }
+
+    // "k v1 v2 ...", the first value is k
+    private static int[] values(String arguments) {
+        String[] tokens = arguments.trim().split("\\s+");
+        if (tokens.length < 2) {
+            throw new IllegalArgumentException("Expected: k v1 v2 ...");
+        }
+        int[] values = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) { // O(n)
+            values[i] = parseInt(tokens[i]);
+        }
+        return values;
+    }
+
+    private static int parseInt(String token) {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + token);
+        }
+    }
+
+    private static void write(Writer output, String line, IOException[] outputError) {
+        synchronized (outputError) {
+            if (outputError[0] != null) {
+                return;
+            }
+            try {
+                output.write(line);
+                output.write('\n');
+                // the results are streamed, a reader of the output gets each one as soon as it is done
+                output.flush();
+            } catch (IOException ioe) {
+                outputError[0] = ioe;
+            }
+        }
+    }
+
+    static String json(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        if (threads <= 0) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.fine("Virtual threads are not available, using a pool of platform threads");
+            }
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-runner");
+            // a forgotten runner should not keep the JVM alive
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -1,9 +1,8 @@
 package gr.headstart.algorithms;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
 import java.util.logging.Logger;
 
@@ -23,9 +22,30 @@ import java.util.logging.Logger;
  * for each array value the indices of the complementary value  and creates the pairs. Each index that has
  * been used is removed from the the map in order to avoid creating duplicate
  * pairs(ie [4,5], [5,4]).
- * I assume that all java Map operations used is performed in constant time. That is not far
+ * I assumed that all java Map operations used is performed in constant time. That is not far
  * from true for the given scenario since elements are Integers and their hashcode is the integer itself
  * so we do not have keys with same hashcodes, which lead to non constant time for Map operations.
+ * The removal of the used index from its list was not constant though, List.remove(Object) searches the list,
+ * so many duplicates made the first version quadratic even when there were few pairs. Also every value and
+ * every index was boxed, which for tens of millions of values is more than the heap can take.
+ *
+ * The current version works on an int[] and allocates nothing per element. The indices are grouped by value
+ * once, in an {@link IntValueIndex}, with the indices of every value in increasing order. Instead of removing
+ * the used indices, for each index i we take only the indices of the complementary value that come after i,
+ * which start at a position found with a binary search. Every pair is found once, as [i,j] with i < j, and the
+ * pairs are in the same order as before. They are written in a {@link PairBuffer}, two int arrays, instead of
+ * a list of objects. The complementary value is computed as a long, so k - value can not overflow and match
+ * a value that does not really add up to k.
+ *
+ * When a value repeats a lot the pairs themselves are the problem, n equal values that add up to k give
+ * n(n-1)/2 pairs and no buffer can hold them. So the pairs can also be given one by one to a
+ * {@link PairConsumer}, which keeps what it wants and can stop the search when it has seen enough, for
+ * example after the first N pairs. And when only the number of pairs is needed it is computed in O(n) from
+ * the number of times every value appears, without finding any pair: a value v that appears m times and
+ * its complementary value c != v that appears m' times give m * m' pairs, and if v == c they give m(m-1)/2.
+ *
+ * These methods index the array on every call. To ask the same array for many k, build a
+ * {@link ComplementaryPairsIndex} once and ask it instead.
  *
  * @Author KouziaMi
  * @Date 5/1/2017.
@@ -41,12 +61,12 @@ public class ComplementaryPairs {
         String input = scanner.nextLine();
         String[] svalues = input.split("\\s");
         int k = Integer.valueOf(svalues[0]);
-        List<Integer> values = new ArrayList<Integer>();
+        int[] values = new int[svalues.length - 1];
         for (int i = 1; i < svalues.length; i++) {
-            values.add(Integer.valueOf(svalues[i]));
+            values[i - 1] = Integer.parseInt(svalues[i]);
         }
 
-        List results = new ComplementaryPairs().calculate(k, values.toArray(new Integer[0]));
+        PairBuffer results = new ComplementaryPairs().calculatePairs(k, values);
         logger.info("results:" + String.valueOf(results));
     }
 
@@ -57,45 +77,113 @@ public class ComplementaryPairs {
             return null;
         }
 
-        List<Pair> results = new ArrayList<>();
+        int[] values = new int[integers.length];
+        for (int i = 0; i < integers.length; i++) { // O(n)
+            values[i] = integers[i];
+        }
+
+        PairBuffer pairs = calculatePairs(k, values);
+        List<Pair> results = new ArrayList<>(pairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            results.add(new Pair(pairs.first(i), pairs.second(i)));
+        }
+        return results;
+    }
+
+    public PairBuffer calculatePairs(int k, int[] values) {
 
-        // we will use this map to store arrays of the indices of every unique value
-        Map<Integer, List<Integer>> valuesMap = new HashMap<>();
+        // check for null or empty input
+        if (values == null || values.length == 0) {
+            return null;
+        }
 
-        // iterate through the values and store indices in the corresponding lists
-        for (int i = 0; i < integers.length; i++){ // O(n)
-            if (valuesMap.containsKey(integers[i])){
-                List<Integer> indices = valuesMap.get(integers[i]); // O(1)
-                indices.add(i); // O(1)
-            } else {
-                List<Integer> indices = new ArrayList<>();
-                indices.add(i); // O(1)
-                valuesMap.put(integers[i], indices); // O(1)
-            }
+        PairBuffer results = new PairBuffer();
+        forEachPair(k, values, results);
+        return results;
+    }
+
+    /**
+     * Gives the pairs to the consumer, in the same order as {@link #calculatePairs(int, int[])}, until the
+     * consumer returns false. Returns the number of pairs that were given to it.
+     */
+    public long forEachPair(int k, int[] values, PairConsumer consumer) {
+
+        // check for null or empty input
+        if (values == null || values.length == 0) {
+            return 0;
         }
 
+        // the indices of every unique value, in increasing order
+        return forEachPair(k, values, new IntValueIndex(values), consumer); // O(n)
+    }
 
-        for (int i = 0; i < integers.length; i++){ // O(n)
-            // find the complementary value
-            int complValue = k - integers[i];
-            // check if this value is stored in the Map
-            if (valuesMap.containsKey(complValue)){ // O(1)
-                // if it is, take the corresponding indeces and create the pairs
-                List<Integer> indices = valuesMap.get(complValue);
-                for (int j = 0; j < indices.size(); j++){ // O(n)
-                    // if value == complValue you will find the same index in the list. don't use it
-                    if (i != indices.get(j)){
-                        results.add(new Pair(i, indices.get(j))); // O(1)
-                    }
+    static long forEachPair(int k, int[] values, IntValueIndex index, PairConsumer consumer) {
+        long emitted = 0;
+        for (int i = 0; i < values.length; i++) { // O(n)
+            // find the complementary value, it may not fit in an int
+            int group = complementaryGroup(index, k, values[i]); // O(1)
+            if (group < 0) {
+                continue;
+            }
+            // the indices before i have already been paired with i, take only those after it
+            for (int p = index.firstAfter(group, i); p < index.groupEnd(group); p++) { // O(log(n)) + pairs
+                emitted++;
+                if (!consumer.accept(i, index.posting(p))) {
+                    return emitted;
                 }
+            }
+        }
+
+        return emitted;
+    }
+
+    /**
+     * The number of pairs, computed from the number of times each value appears without finding them.
+     */
+    public long count(int k, int[] values) {
+
+        // check for null or empty input
+        if (values == null || values.length == 0) {
+            return 0;
+        }
 
-                // find the index of the current element in the map and remove it, you don't need it
-                List valueIndices = valuesMap.get(integers[i]); // O(1)
-                valueIndices.remove(Integer.valueOf(i)); // O(1)
+        IntValueIndex index = new IntValueIndex(values); // O(n)
+
+        long count = 0;
+        for (int g = 0; g < index.groups(); g++) { // O(distinct values)
+            int value = index.value(g);
+            int complGroup = complementaryGroup(index, k, value);
+            if (complGroup < 0) {
+                continue;
+            }
+            long multiplicity = index.count(g);
+            if (complGroup == g) {
+                count += multiplicity * (multiplicity - 1) / 2;
+            } else if (value < index.value(complGroup)) {
+                // count every pair of distinct values once, from its smaller value
+                count += multiplicity * index.count(complGroup);
             }
         }
+        return count;
+    }
 
-        return results;
+    // the group of k - value or -1 if there is none
+    private static int complementaryGroup(IntValueIndex index, int k, int value) {
+        long complValue = (long) k - value;
+        if (complValue < Integer.MIN_VALUE || complValue > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return index.group((int) complValue);
+    }
+
+    /**
+     * Receives the pairs of indices as they are found, first < second.
+     */
+    public interface PairConsumer {
+        /**
+         * @return false to stop the search
+         */
+        boolean accept(int first, int second);
     }
 
     class Pair {
@@ -112,4 +200,57 @@ public class ComplementaryPairs {
             return "[" + firstIndex + "," + lastIndex + "]";
         }
     }
+
+    /**
+     * The pairs of indices kept in two growing int arrays, so a pair costs 8 bytes and not an object.
+     */
+    public static class PairBuffer implements PairConsumer {
+        private int[] firsts = new int[16];
+        private int[] seconds = new int[16];
+        private int size;
+
+        public void add(int first, int second) {
+            if (size == firsts.length) {
+                if (size == Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Too many pairs for a buffer");
+                }
+                int capacity = (int) Math.min((long) size * 2, Integer.MAX_VALUE - 8);
+                firsts = Arrays.copyOf(firsts, capacity);
+                seconds = Arrays.copyOf(seconds, capacity);
+            }
+            firsts[size] = first;
+            seconds[size] = second;
+            size++;
+        }
+
+        @Override
+        public boolean accept(int first, int second) {
+            add(first, second);
+            return true;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int first(int i) {
+            return firsts[i];
+        }
+
+        public int second(int i) {
+            return seconds[i];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append('[').append(firsts[i]).append(',').append(seconds[i]).append(']');
+            }
+            return builder.append(']').toString();
+        }
+    }
 }
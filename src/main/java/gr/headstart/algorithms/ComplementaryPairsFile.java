@@ -0,0 +1,710 @@
+package gr.headstart.algorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+/**
+ * {@link ComplementaryPairs} for files of ints that do not fit in the heap. The file is a plain array of
+ * little endian 4 byte ints, the index of a value is its position in the file, so a file can have more than
+ * Integer.MAX_VALUE values and the indices are longs here.
+ *
+ * The file is read through memory mapped chunks and never copied in the heap as a whole.
+ *
+ * Counting the pairs only needs the number of times every value appears. The chunks of the file are counted
+ * in parallel by the workers of a fork join pool, each one in its own {@link IntLongHistogram}, and the
+ * histograms are merged two by two on the way back. The pairs for any number of k are then counted from
+ * the merged histogram, also in parallel, so the file is read once no matter how many k we ask. The memory
+ * used is a histogram per worker, which depends on the distinct values and not on the size of the file.
+ *
+ * A file can have up to 2^32 distinct values though, and the histograms have to fit in the memory budget, so
+ * each one is limited to its share of it. When there are more distinct values than that, the values are
+ * split instead into partition files by ranges of values, the top 8 bits first, and a range that is still
+ * too big for its histogram is split again by the next 8 bits. The pairs of a value in a range can only be
+ * with values in the mirrored range, k - v, so for every k the ranges are walked upwards while their
+ * complementary ranges are walked downwards, with the histograms of two ranges in memory at a time. This
+ * reads the ranges about twice for every k instead of the file once for all of them, but it stays in the
+ * budget for any file.
+ *
+ * Finding the pairs themselves needs the indices, which do not fit in memory. The values v and k - v can
+ * only pair with each other, so the (value, index) records are split into partition files by the hash of
+ * min(v, k - v), and the pairs are found in each partition on its own, like the in memory version does with
+ * the whole array. A record whose complementary value does not appear in the file can not be in any pair, so
+ * the histogram is computed first and these records are not written at all, unless it does not fit in the
+ * memory budget, when all of them are written. The pairs are given to the
+ * consumer partition after partition: in each partition they are ordered by their first and then by their
+ * second index, but the order of the partitions is not the order of the indices. They are the same pairs as
+ * the ones of the in memory version though, only in a different order.
+ *
+ * The partitions are {@link SpillPartitions}, so there are never more than SpillPartitions.MAX_FAN_OUT of
+ * them at once. A partition that is still larger than the memory budget is split again, with the level
+ * mixed in the hash. A single value that pairs with itself, or with one other value, always ends up in a
+ * single partition though, so a partition can be larger than the memory budget. It then gives a number of
+ * pairs that is quadratic to its size anyway.
+ */
+public class ComplementaryPairsFile {
+
+    private final static Logger logger = Logger.getLogger(ComplementaryPairsFile.class.getName());
+
+    static final int DEFAULT_CHUNK_INTS = 16 * 1024 * 1024;
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    // a record in a partition file is the value and the index
+    private static final int RECORD_BYTES = 12;
+    // the record in the heap plus its share of the value index of the partition
+    private static final int BYTES_PER_RECORD = 40;
+    // a slot of a histogram is 12 bytes and the table is between a quarter and half full
+    private static final int HISTOGRAM_BYTES_PER_VALUE = 48;
+    // the bits of the value that choose its range partition at every level, 4 levels split an int to its values
+    private static final int RANGE_BITS = 8;
+    // a partition that is too big is split again at most this many times
+    private static final int MAX_PARTITION_LEVELS = 4;
+    private static final int MIN_PARTITION_BUFFER = 4 * 1024 - 4 * 1024 % RECORD_BYTES;
+    private static final int MAX_PARTITION_BUFFER = 1024 * 1024 - 1024 * 1024 % RECORD_BYTES;
+    // less k than this are counted by a single worker
+    private static final int MIN_PARALLEL_QUERIES = 4;
+
+    private final Path file;
+    private final int chunkInts;
+
+    public ComplementaryPairsFile(Path file) {
+        this(file, DEFAULT_CHUNK_INTS);
+    }
+
+    ComplementaryPairsFile(Path file, int chunkInts) {
+        this.file = file;
+        this.chunkInts = chunkInts;
+    }
+
+    /**
+     * Counts the pairs of a file for many k, reading the arguments as "file k1 k2 ...". The file is in the
+     * format of {@link #write(Path, int[])}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            logger.warning("Usage: ComplementaryPairsFile file k1 k2 ...");
+            return;
+        }
+
+        int[] ks = new int[args.length - 1];
+        for (int i = 1; i < args.length; i++) {
+            ks[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        long[] counts = new ComplementaryPairsFile(Paths.get(args[0])).counts(ks);
+        for (int i = 0; i < ks.length; i++) {
+            logger.info("k: " + ks[i] + " pairs: " + counts[i]);
+        }
+    }
+
+    /**
+     * Writes the values as a file of little endian ints, the format this class reads.
+     */
+    public static void write(Path file, int[] values) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            for (int value : values) {
+                if (!buffer.hasRemaining()) {
+                    write(channel, buffer);
+                }
+                buffer.putInt(value);
+            }
+            write(channel, buffer);
+        }
+    }
+
+    /**
+     * The number of values in the file.
+     */
+    public long size() throws IOException {
+        long bytes = Files.size(file);
+        if (bytes % Integer.BYTES != 0) {
+            throw new IOException("The size of " + file + " is not a multiple of " + Integer.BYTES + " bytes");
+        }
+        return bytes / Integer.BYTES;
+    }
+
+    /**
+     * The number of times each value appears in the file, counted in parallel in the given pool. Throws a
+     * {@link IntLongHistogram.TooManyValuesException} when a histogram of the workers, or the merged one,
+     * would hold more than maxValues distinct values.
+     */
+    IntLongHistogram histogram(ForkJoinPool pool, int maxValues) throws IOException {
+        long size = size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long chunks = (size + chunkInts - 1) / chunkInts;
+            if (chunks == 0) {
+                return new IntLongHistogram();
+            }
+            return pool.invoke(new HistogramTask(channel, size, 0, chunks, maxValues));
+        } catch (IOExceptionWrapper wrapper) {
+            throw wrapper.getCause();
+        }
+    }
+
+    /**
+     * The number of pairs for k.
+     */
+    public long count(int k) throws IOException {
+        return counts(new int[]{k})[0];
+    }
+
+    /**
+     * The number of pairs for each k, reading the file once with all the workers of the common pool.
+     */
+    public long[] counts(int[] ks) throws IOException {
+        return counts(ks, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #counts(int[], ForkJoinPool, long, Path)} with the default memory budget and the default
+     * temporary directory.
+     */
+    public long[] counts(int[] ks, ForkJoinPool pool) throws IOException {
+        return counts(ks, pool, DEFAULT_MEMORY_BUDGET, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * The number of pairs for each k, reading the file once with all the workers of the pool. When the
+     * histograms of the workers do not fit in the memory budget the pairs are counted from ranges of values
+     * in temporary files instead, which are deleted when the method returns.
+     */
+    public long[] counts(int[] ks, ForkJoinPool pool, long memoryBudget, Path tempDirectory) throws IOException {
+        if (ks == null) {
+            logger.warning("No k to count the pairs for");
+            return null;
+        }
+        if (memoryBudget <= 0) {
+            logger.warning("Memory budget must be a positive number of bytes");
+            return null;
+        }
+
+        IntLongHistogram histogram;
+        try {
+            histogram = histogram(pool, maxValues(memoryBudget, pool));
+        } catch (IntLongHistogram.TooManyValuesException tooMany) {
+            logger.info(tooMany.getMessage() + " for the memory budget of " + memoryBudget
+                    + " bytes, counting the pairs by ranges of values");
+            return rangeCounts(ks, memoryBudget, tempDirectory);
+        }
+        long[] counts = new long[ks.length];
+        pool.invoke(new CountTask(histogram, ks, counts, 0, ks.length));
+        return counts;
+    }
+
+    // the distinct values a histogram can hold when every worker has one, and the merge needs one more
+    private static int maxValues(long memoryBudget, ForkJoinPool pool) {
+        return (int) Math.min(IntLongHistogram.MAX_SIZE,
+                memoryBudget / HISTOGRAM_BYTES_PER_VALUE / (pool.getParallelism() + 1));
+    }
+
+    /**
+     * Same as {@link #forEachPair(int, IndexPairConsumer, long, Path)} with the default memory budget and the
+     * default temporary directory.
+     */
+    public long forEachPair(int k, IndexPairConsumer consumer) throws IOException {
+        return forEachPair(k, consumer, DEFAULT_MEMORY_BUDGET, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Gives the pairs for k to the consumer, partition after partition, until the consumer returns false.
+     * The partitions are chosen so that each one needs about memoryBudget bytes of heap and they are deleted
+     * when the method returns, even if it fails. Returns the number of pairs that were given to the consumer.
+     */
+    public long forEachPair(int k, IndexPairConsumer consumer, long memoryBudget, Path tempDirectory)
+            throws IOException {
+        if (memoryBudget <= 0) {
+            logger.warning("Memory budget must be a positive number of bytes");
+            return 0;
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        IntLongHistogram histogram;
+        long records;
+        try {
+            histogram = histogram(pool, maxValues(memoryBudget, pool));
+            // the records that have a complementary value are those that take part in a pair
+            records = candidates(histogram, k);
+        } catch (IntLongHistogram.TooManyValuesException tooMany) {
+            logger.info(tooMany.getMessage() + " for the memory budget of " + memoryBudget
+                    + " bytes, partitioning all the records");
+            histogram = null;
+            records = size();
+        }
+        if (records == 0) {
+            return 0;
+        }
+
+        try (SpillPartitions runs = partitions(tempDirectory, records, memoryBudget)) {
+            partition(k, histogram, runs);
+            runs.flush();
+            return pairs(k, runs, 0, consumer, memoryBudget, tempDirectory, true)[0];
+        }
+    }
+
+    // enough partitions for the given records to fit in the budget, but not more than can be open at once
+    private static SpillPartitions partitions(Path tempDirectory, long records, long memoryBudget)
+            throws IOException {
+        int partitions = (int) Math.min(SpillPartitions.MAX_FAN_OUT,
+                Math.max(1, (records * BYTES_PER_RECORD + memoryBudget - 1) / memoryBudget));
+        int bufferSize = (int) Math.max(MIN_PARTITION_BUFFER,
+                Math.min(MAX_PARTITION_BUFFER, memoryBudget / 4 / partitions / RECORD_BYTES * RECORD_BYTES));
+        return new SpillPartitions(tempDirectory, "complementary-pairs", partitions, bufferSize,
+                ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Gives the pairs of the partitions of the level to the consumer, returns the pairs given and 0 if the
+     * consumer stopped. A partition that is still too big for the budget is split again with the next level,
+     * unless splitting did not make any partition smaller, which means it is mostly a single key.
+     */
+    private static long[] pairs(int k, SpillPartitions runs, int level, IndexPairConsumer consumer,
+                                long memoryBudget, Path tempDirectory, boolean maySplit) throws IOException {
+        long[] emitted = {0, 1};
+        for (int i = 0; i < runs.size() && emitted[1] != 0; i++) {
+            long size = Files.size(runs.file(i));
+            long[] result;
+            if (size / RECORD_BYTES * BYTES_PER_RECORD > memoryBudget && maySplit) {
+                if (level + 1 < MAX_PARTITION_LEVELS) {
+                    try (SpillPartitions split = partitions(tempDirectory, size / RECORD_BYTES, memoryBudget)) {
+                        // the records are read in the order they were written, so they stay in the order of
+                        // their indices in the new partitions
+                        forEachRecord(runs.file(i), (value, index) -> add(split, level + 1,
+                                Math.min(value, (long) k - value), value, index));
+                        split.flush();
+                        runs.delete(i);
+                        result = pairs(k, split, level + 1, consumer, memoryBudget, tempDirectory,
+                                split.largest() < size);
+                    }
+                } else {
+                    logger.warning("Partition " + runs.file(i) + " of " + size
+                            + " bytes may not fit in the memory budget of " + memoryBudget + " bytes");
+                    result = pairs(k, runs.file(i), consumer);
+                }
+            } else {
+                result = pairs(k, runs.file(i), consumer);
+            }
+            emitted[0] += result[0];
+            emitted[1] = result[1];
+            runs.delete(i);
+        }
+        return emitted;
+    }
+
+    // the number of values that have their complementary value in the file
+    private static long candidates(IntLongHistogram histogram, int k) {
+        long[] records = new long[1];
+        histogram.forEach((value, count) -> {
+            long complValue = (long) k - value;
+            if (complValue >= Integer.MIN_VALUE && complValue <= Integer.MAX_VALUE) {
+                long complCount = histogram.count((int) complValue);
+                if (complValue != value ? complCount > 0 : count > 1) {
+                    records[0] += count;
+                }
+            }
+        });
+        return records[0];
+    }
+
+    // writes the records that can be in a pair to their partitions, in the order of their indices, or all the
+    // records when there is no histogram
+    private void partition(int k, IntLongHistogram histogram, SpillPartitions runs) throws IOException {
+        long size = size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long start = 0; start < size; start += chunkInts) { // O(n)
+                IntBuffer values = map(channel, start, Math.min(chunkInts, size - start));
+                for (int i = 0; i < values.limit(); i++) {
+                    int value = values.get(i);
+                    long complValue = (long) k - value;
+                    if (complValue < Integer.MIN_VALUE || complValue > Integer.MAX_VALUE) {
+                        continue;
+                    }
+                    if (histogram != null) {
+                        long complCount = histogram.count((int) complValue);
+                        if (complValue != value ? complCount == 0 : complCount < 2) {
+                            continue;
+                        }
+                    }
+                    add(runs, 0, Math.min(value, complValue), value, start + i);
+                }
+            }
+        }
+    }
+
+    // writes the (value, index) record to the partition of its key, min(v, k - v)
+    private static void add(SpillPartitions runs, int level, long key, int value, long index) throws IOException {
+        runs.buffer(partitionOf(key, runs.size(), level), RECORD_BYTES).putInt(value).putLong(index);
+    }
+
+    static int partitionOf(long key, int partitions, int level) {
+        // the finalizer of MurmurHash3, with the seed of the level added before the mixing so that the
+        // levels split the keys independently
+        long hash = key + level * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (int) Math.floorMod(hash, (long) partitions);
+    }
+
+    /**
+     * The pairs for each k from ranges of values, for a file with too many distinct values for a histogram in
+     * the memory budget. All the partition files are deleted when the method returns, even if it fails.
+     */
+    private long[] rangeCounts(int[] ks, long memoryBudget, Path tempDirectory) throws IOException {
+        int bufferSize = (int) Math.max(MIN_PARTITION_BUFFER, Math.min(MAX_PARTITION_BUFFER,
+                memoryBudget / 4 / SpillPartitions.MAX_FAN_OUT / Integer.BYTES * Integer.BYTES));
+        List<SpillPartitions> levels = new ArrayList<>();
+        try {
+            SpillPartitions runs = rangePartitions(tempDirectory, bufferSize, levels);
+            long size = size();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (long start = 0; start < size; start += chunkInts) { // O(n)
+                    IntBuffer values = map(channel, start, Math.min(chunkInts, size - start));
+                    for (int i = 0; i < values.limit(); i++) {
+                        addValue(runs, 0, values.get(i));
+                    }
+                }
+            }
+            runs.flush();
+
+            List<ValueRange> ranges = new ArrayList<>();
+            ranges(runs, 0, Integer.MIN_VALUE, memoryBudget, tempDirectory, bufferSize, levels, ranges);
+            long[] counts = new long[ks.length];
+            for (int i = 0; i < ks.length; i++) {
+                counts[i] = rangePairs(ks[i], ranges);
+            }
+            return counts;
+        } finally {
+            close(levels);
+        }
+    }
+
+    private static SpillPartitions rangePartitions(Path tempDirectory, int bufferSize, List<SpillPartitions> levels)
+            throws IOException {
+        SpillPartitions runs = new SpillPartitions(tempDirectory, "complementary-pairs-ranges",
+                1 << RANGE_BITS, bufferSize, ByteOrder.LITTLE_ENDIAN);
+        levels.add(runs);
+        return runs;
+    }
+
+    // writes the value to the partition of its range at the level, the ranges are in the order of the values
+    private static void addValue(SpillPartitions runs, int level, int value) throws IOException {
+        int shift = Integer.SIZE - RANGE_BITS * (level + 1);
+        int partition = (int) (((long) value - Integer.MIN_VALUE) >>> shift) & ((1 << RANGE_BITS) - 1);
+        runs.buffer(partition, Integer.BYTES).putInt(value);
+    }
+
+    /**
+     * Adds the ranges of the partitions of the level to the list, in ascending order, splitting again the
+     * partitions whose histogram would not fit in half the memory budget. The first partition of the level
+     * starts at the value low.
+     */
+    private static void ranges(SpillPartitions runs, int level, long low, long memoryBudget, Path tempDirectory,
+                               int bufferSize, List<SpillPartitions> levels, List<ValueRange> ranges)
+            throws IOException {
+        int shift = Integer.SIZE - RANGE_BITS * (level + 1);
+        for (int i = 0; i < runs.size(); i++) {
+            long values = Files.size(runs.file(i)) / Integer.BYTES;
+            long from = low + ((long) i << shift);
+            if (values == 0) {
+                runs.delete(i);
+            } else if (values * HISTOGRAM_BYTES_PER_VALUE > memoryBudget / 2 && shift > 0) {
+                SpillPartitions split = rangePartitions(tempDirectory, bufferSize, levels);
+                forEachValue(runs.file(i), value -> addValue(split, level + 1, value));
+                split.flush();
+                runs.delete(i);
+                ranges(split, level + 1, from, memoryBudget, tempDirectory, bufferSize, levels, ranges);
+            } else {
+                ranges.add(new ValueRange(runs.file(i), from, from + (1L << shift) - 1));
+            }
+        }
+    }
+
+    /**
+     * The pairs for k from the ranges, in ascending order. Every pair is counted from its smaller value, so
+     * the ranges are walked upwards until k / 2 and the ranges of their complementary values downwards, and
+     * each range is read at most twice.
+     */
+    private static long rangePairs(int k, List<ValueRange> ranges) throws IOException {
+        long pairs = 0;
+        int top = ranges.size() - 1;
+        int loaded = -1;
+        IntLongHistogram complHistogram = null;
+        for (int i = 0; i < ranges.size() && 2 * ranges.get(i).low <= k; i++) {
+            ValueRange range = ranges.get(i);
+            // the ranges above the largest complementary value of this range are done
+            while (top > i && ranges.get(top).low > k - range.low) {
+                top--;
+            }
+            IntLongHistogram histogram = i == loaded ? complHistogram : histogram(range);
+            for (int j = top; j >= i && ranges.get(j).high >= k - range.high; j--) {
+                if (j != i && j != loaded) {
+                    complHistogram = null;
+                    complHistogram = histogram(ranges.get(j));
+                    loaded = j;
+                }
+                pairs += pairs(k, histogram, j == i ? histogram : complHistogram, ranges.get(j));
+            }
+        }
+        return pairs;
+    }
+
+    // the pairs of a value of the histogram with a value of the complementary histogram in the range
+    private static long pairs(int k, IntLongHistogram histogram, IntLongHistogram complHistogram, ValueRange range) {
+        long[] pairs = {0};
+        histogram.forEach((value, count) -> {
+            long complValue = (long) k - value;
+            if (complValue < range.low || complValue > range.high) {
+                return;
+            }
+            if (complValue == value) {
+                pairs[0] += count * (count - 1) / 2;
+            } else if (complValue > value) {
+                // count every pair of distinct values once, from its smaller value
+                pairs[0] += count * complHistogram.count((int) complValue);
+            }
+        });
+        return pairs[0];
+    }
+
+    private static IntLongHistogram histogram(ValueRange range) throws IOException {
+        IntLongHistogram histogram = new IntLongHistogram();
+        forEachValue(range.file, histogram::add);
+        return histogram;
+    }
+
+    // closes all the partitions, even if some fail, and throws the first failure
+    private static void close(List<SpillPartitions> levels) throws IOException {
+        IOException failure = null;
+        for (SpillPartitions runs : levels) {
+            try {
+                runs.close();
+            } catch (IOException ioe) {
+                if (failure == null) {
+                    failure = ioe;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // gives the pairs of a partition to the consumer, returns the pairs given and 0 if the consumer stopped
+    private static long[] pairs(int k, Path partition, IndexPairConsumer consumer) throws IOException {
+        long records = Files.size(partition) / RECORD_BYTES;
+        if (records > Integer.MAX_VALUE - 8) {
+            throw new IOException("Partition " + partition + " has too many records: " + records);
+        }
+        int[] values = new int[(int) records];
+        long[] indices = new long[(int) records];
+        int[] record = {0};
+        forEachRecord(partition, (value, index) -> {
+            values[record[0]] = value;
+            indices[record[0]++] = index;
+        });
+
+        // the records are in the order of their indices, so the pairs come out ordered in the partition
+        long[] emitted = {0, 1};
+        ComplementaryPairs.forEachPair(k, values, new IntValueIndex(values), (first, second) -> {
+            emitted[0]++;
+            if (!consumer.accept(indices[first], indices[second])) {
+                emitted[1] = 0;
+                return false;
+            }
+            return true;
+        });
+        return emitted;
+    }
+
+    // reads the records of a partition in the order they were written
+    private static void forEachRecord(Path partition, RecordConsumer consumer) throws IOException {
+        read(partition, RECORD_BYTES, buffer -> consumer.accept(buffer.getInt(), buffer.getLong()));
+    }
+
+    // reads the values of a range partition
+    private static void forEachValue(Path partition, ValueConsumer consumer) throws IOException {
+        read(partition, Integer.BYTES, buffer -> consumer.accept(buffer.getInt()));
+    }
+
+    // reads a partition in buffers of whole records, the buffer size is a multiple of the record size
+    private static void read(Path partition, int recordBytes, BufferConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(partition, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_PARTITION_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+            while (true) {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                    // keep reading until the buffer is full or the file ends
+                }
+                buffer.flip();
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+                while (buffer.remaining() >= recordBytes) {
+                    consumer.accept(buffer);
+                }
+            }
+        }
+    }
+
+    private static IntBuffer map(FileChannel channel, long start, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start * Integer.BYTES,
+                length * Integer.BYTES);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Receives the pairs of indices as they are found, first < second.
+     */
+    public interface IndexPairConsumer {
+        /**
+         * @return false to stop the search
+         */
+        boolean accept(long first, long second);
+    }
+
+    private interface RecordConsumer {
+        void accept(int value, long index) throws IOException;
+    }
+
+    private interface ValueConsumer {
+        void accept(int value) throws IOException;
+    }
+
+    private interface BufferConsumer {
+        void accept(ByteBuffer buffer) throws IOException;
+    }
+
+    // a range partition and the values [low, high] it is for
+    private static class ValueRange {
+        final Path file;
+        final long low;
+        final long high;
+
+        ValueRange(Path file, long low, long high) {
+            this.file = file;
+            this.low = low;
+            this.high = high;
+        }
+    }
+
+    // carries an IOException through compute(), which can not throw it
+    private static class IOExceptionWrapper extends RuntimeException {
+        IOExceptionWrapper(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Counts the values of the chunks [fromChunk, toChunk), splitting them in two halves while there are
+     * more than one.
+     */
+    private class HistogramTask extends RecursiveTask<IntLongHistogram> {
+        final FileChannel channel;
+        final long size;
+        final long fromChunk;
+        final long toChunk;
+        final int maxValues;
+
+        HistogramTask(FileChannel channel, long size, long fromChunk, long toChunk, int maxValues) {
+            this.channel = channel;
+            this.size = size;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.maxValues = maxValues;
+        }
+
+        @Override
+        protected IntLongHistogram compute() {
+            if (toChunk - fromChunk == 1) {
+                long start = fromChunk * chunkInts;
+                IntLongHistogram histogram = new IntLongHistogram(16, maxValues);
+                try {
+                    IntBuffer values = map(channel, start, Math.min(chunkInts, size - start));
+                    for (int i = 0; i < values.limit(); i++) { // O(n)
+                        histogram.add(values.get(i));
+                    }
+                } catch (IOException ioe) {
+                    throw new IOExceptionWrapper(ioe);
+                }
+                return histogram;
+            }
+
+            long middle = (fromChunk + toChunk) >>> 1;
+            HistogramTask left = new HistogramTask(channel, size, fromChunk, middle, maxValues);
+            left.fork();
+            IntLongHistogram right = new HistogramTask(channel, size, middle, toChunk, maxValues).compute();
+            IntLongHistogram histogram = left.join();
+            // add the smaller histogram to the larger one
+            if (histogram.size() < right.size()) {
+                right.merge(histogram);
+                return right;
+            }
+            histogram.merge(right);
+            return histogram;
+        }
+    }
+
+    /**
+     * Counts the pairs of ks[from, to) from the histogram, splitting the range in two halves while it is big
+     * enough.
+     */
+    private static class CountTask extends RecursiveAction {
+        final IntLongHistogram histogram;
+        final int[] ks;
+        final long[] counts;
+        final int from;
+        final int to;
+
+        CountTask(IntLongHistogram histogram, int[] ks, long[] counts, int from, int to) {
+            this.histogram = histogram;
+            this.ks = ks;
+            this.counts = counts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_PARALLEL_QUERIES) {
+                for (int i = from; i < to; i++) {
+                    counts[i] = histogram.pairs(ks[i]);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new CountTask(histogram, ks, counts, from, middle),
+                    new CountTask(histogram, ks, counts, middle, to));
+        }
+    }
+}
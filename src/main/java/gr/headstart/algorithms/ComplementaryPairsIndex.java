@@ -0,0 +1,148 @@
+package gr.headstart.algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An index over an array of ints for answering {@link ComplementaryPairs} questions for many different k.
+ * Building the index is the expensive part, grouping the indices by value is O(n), while a question is
+ * either O(distinct values) for the number of pairs or proportional to the pairs for the pairs themselves.
+ * So when the same array is asked for dozens of k it is indexed once and all the k are asked against it.
+ *
+ * The index keeps the indices of every value in increasing order ({@link IntValueIndex}) and the distinct
+ * values sorted, with the number of times each one appears. The number of pairs for a k is found with two
+ * pointers that start at the two ends of the sorted values and move towards each other: if the two values
+ * add up to less than k the left one moves right, if they add up to more the right one moves left, and if
+ * they add up to k their multiplicities give the pairs.
+ *
+ * The index is never changed after it is built, the array is copied so that the caller can not change it
+ * either, so any number of threads can ask it at the same time. {@link #counts(int[])} does exactly that,
+ * splitting the k between the workers of a fork join pool.
+ */
+public final class ComplementaryPairsIndex {
+
+    // less k than this are counted by a single worker
+    private static final int MIN_PARALLEL_QUERIES = 4;
+
+    private final int[] values;
+    private final IntValueIndex index;
+    private final int[] sortedValues;
+    private final int[] sortedCounts;
+
+    /**
+     * Indexes a copy of the values.
+     */
+    public ComplementaryPairsIndex(int[] values) {
+        this.values = values.clone();
+        index = new IntValueIndex(this.values); // O(n)
+
+        sortedValues = new int[index.groups()];
+        for (int g = 0; g < sortedValues.length; g++) {
+            sortedValues[g] = index.value(g);
+        }
+        Arrays.sort(sortedValues); // O(d*log(d))
+        sortedCounts = new int[sortedValues.length];
+        for (int i = 0; i < sortedValues.length; i++) {
+            sortedCounts[i] = index.count(index.group(sortedValues[i]));
+        }
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public int distinctValues() {
+        return sortedValues.length;
+    }
+
+    /**
+     * The number of pairs of indices whose values add up to k.
+     */
+    public long count(int k) {
+        long count = 0;
+        int left = 0;
+        int right = sortedValues.length - 1;
+        while (left <= right) { // O(d)
+            long sum = (long) sortedValues[left] + sortedValues[right];
+            if (sum < k) {
+                left++;
+            } else if (sum > k) {
+                right--;
+            } else {
+                long multiplicity = sortedCounts[left];
+                if (left == right) {
+                    count += multiplicity * (multiplicity - 1) / 2;
+                } else {
+                    count += multiplicity * sortedCounts[right];
+                }
+                left++;
+                right--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The number of pairs for each k, computed in parallel in the common pool.
+     */
+    public long[] counts(int[] ks) {
+        return counts(ks, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * The number of pairs for each k, computed in parallel in the given pool.
+     */
+    public long[] counts(int[] ks, ForkJoinPool pool) {
+        long[] counts = new long[ks.length];
+        pool.invoke(new CountTask(ks, counts, 0, ks.length));
+        return counts;
+    }
+
+    /**
+     * Gives the pairs for k to the consumer, ordered by their first and then by their second index, until
+     * the consumer returns false. Returns the number of pairs that were given to it.
+     */
+    public long forEachPair(int k, ComplementaryPairs.PairConsumer consumer) {
+        return ComplementaryPairs.forEachPair(k, values, index, consumer);
+    }
+
+    /**
+     * All the pairs for k.
+     */
+    public ComplementaryPairs.PairBuffer pairs(int k) {
+        ComplementaryPairs.PairBuffer pairs = new ComplementaryPairs.PairBuffer();
+        forEachPair(k, pairs);
+        return pairs;
+    }
+
+    /**
+     * Counts the pairs of ks[from, to), splitting the range in two halves while it is big enough.
+     */
+    private class CountTask extends RecursiveAction {
+        final int[] ks;
+        final long[] counts;
+        final int from;
+        final int to;
+
+        CountTask(int[] ks, long[] counts, int from, int to) {
+            this.ks = ks;
+            this.counts = counts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_PARALLEL_QUERIES) {
+                for (int i = from; i < to; i++) {
+                    counts[i] = count(ks[i]);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new CountTask(ks, counts, from, middle), new CountTask(ks, counts, middle, to));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package gr.headstart.algorithms;
+
+/**
+ * Counts how many times each int value appears, in an open addressing hash table of primitive keys and
+ * counts. A HashMap&lt;Integer, Long&gt; would box every value and every count, this table takes 12 bytes
+ * per slot and allocates only when it grows.
+ *
+ * A slot is empty when its count is 0, so any int can be a key. The table is kept at most half full and
+ * doubles when it gets fuller. Histograms of different parts of the same data can be merged, which is how
+ * the parts of a file are counted in parallel.
+ *
+ * The table can not be larger than MAX_CAPACITY, the largest power of two an array can have, so a histogram
+ * holds at most MAX_SIZE distinct values. A smaller limit can be given to keep a histogram in a memory
+ * budget. Adding a value over the limit throws a {@link TooManyValuesException}, and the caller has to count
+ * the values some other way, like {@link ComplementaryPairsFile} does with ranges of values.
+ */
+final class IntLongHistogram {
+
+    static final int MAX_CAPACITY = 1 << 30;
+    static final int MAX_SIZE = MAX_CAPACITY / 2;
+
+    private final int maxSize;
+    private int[] keys;
+    private long[] counts;
+    private int shift;
+    private int size;
+
+    IntLongHistogram() {
+        this(16);
+    }
+
+    IntLongHistogram(int expectedValues) {
+        this(expectedValues, MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the most distinct values the histogram can hold, at most MAX_SIZE
+     */
+    IntLongHistogram(int expectedValues, int maxSize) {
+        this.maxSize = Math.min(maxSize, MAX_SIZE);
+        int capacity = capacity(Math.min(expectedValues, this.maxSize));
+        keys = new int[capacity];
+        counts = new long[capacity];
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    public void add(int value) {
+        add(value, 1);
+    }
+
+    public void add(int value, long count) {
+        int mask = keys.length - 1;
+        int slot = slot(value);
+        while (counts[slot] != 0 && keys[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        if (counts[slot] == 0) {
+            if (size == maxSize) {
+                throw new TooManyValuesException("More than " + maxSize + " distinct values");
+            }
+            keys[slot] = value;
+            if (++size * 2 > keys.length) {
+                counts[slot] = count;
+                grow();
+                return;
+            }
+        }
+        counts[slot] += count;
+    }
+
+    /**
+     * The number of times the value was added, 0 if it was never added.
+     */
+    public long count(int value) {
+        int mask = keys.length - 1;
+        for (int slot = slot(value); counts[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == value) {
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the counts of the other histogram to this one.
+     */
+    public void merge(IntLongHistogram other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            if (other.counts[slot] != 0) {
+                add(other.keys[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Visits the values and their counts, in no particular order.
+     */
+    public void forEach(ValueVisitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (counts[slot] != 0) {
+                visitor.visit(keys[slot], counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * The number of distinct values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of pairs of positions whose values add up to k, from the counts of the values.
+     */
+    public long pairs(int k) {
+        long pairs = 0;
+        for (int slot = 0; slot < keys.length; slot++) { // O(distinct values)
+            long multiplicity = counts[slot];
+            if (multiplicity == 0) {
+                continue;
+            }
+            // the complementary value may not fit in an int
+            long complValue = (long) k - keys[slot];
+            if (complValue < Integer.MIN_VALUE || complValue > Integer.MAX_VALUE) {
+                continue;
+            }
+            if (complValue == keys[slot]) {
+                pairs += multiplicity * (multiplicity - 1) / 2;
+            } else if (complValue > keys[slot]) {
+                // count every pair of distinct values once, from its smaller value
+                pairs += multiplicity * count((int) complValue);
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * The table size for the expected values, at most half full. It is MAX_CAPACITY for MAX_SIZE values, so
+     * a histogram that is not over its limit never needs a larger table.
+     */
+    static int capacity(int expectedValues) {
+        return (int) Math.min(MAX_CAPACITY, Long.highestOneBit(Math.max(expectedValues, 8) * 2L - 1) << 1);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        shift--;
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private int slot(int value) {
+        // fibonacci hashing, the high bits of the product are well mixed
+        return (value * 0x9E3779B9) >>> shift;
+    }
+
+    interface ValueVisitor {
+        void visit(int value, long count);
+    }
+
+    /**
+     * Thrown when a histogram would hold more distinct values than its limit. The histogram is unchanged.
+     */
+    static final class TooManyValuesException extends RuntimeException {
+        TooManyValuesException(String message) {
+            super(message);
+        }
+    }
+}
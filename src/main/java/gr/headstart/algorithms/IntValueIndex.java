@@ -0,0 +1,142 @@
+package gr.headstart.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Groups the indices of an int array by value, without boxing anything. Every distinct value gets a group
+ * id through an open addressing hash table of ints, and the indices of all the groups are stored one group
+ * after the other in a single int array, like a posting list. The indices of a group are in increasing order.
+ *
+ * Building the index takes two passes over the values: the first one counts the occurrences of each value
+ * and the second one places each index in the slot reserved for its group. The memory used is a few ints per
+ * element and per distinct value, and nothing is allocated per element.
+ *
+ * The table of the distinct values can not be larger than MAX_TABLE_SIZE, the largest power of two an array
+ * can have, and needs at least one empty slot. So an index holds less than MAX_TABLE_SIZE values, and when
+ * there are more than half of that the table can be more than half full.
+ *
+ * The index is not modified after it is built, so it can be read by many threads.
+ */
+final class IntValueIndex {
+
+    private static final int EMPTY = -1;
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private final int[] tableValues;
+    private final int[] tableGroups;
+    private final int tableShift;
+
+    private final int[] groupValues;
+    private final int[] offsets;
+    private final int[] postings;
+
+    IntValueIndex(int[] values) {
+        int tableSize = tableSize(values.length);
+        tableValues = new int[tableSize];
+        tableGroups = new int[tableSize];
+        Arrays.fill(tableGroups, EMPTY);
+        tableShift = 32 - Integer.numberOfTrailingZeros(tableSize);
+
+        // count the occurrences of each value, counts[g + 1] is the count of group g
+        int[] distinct = new int[values.length];
+        int[] counts = new int[values.length + 1];
+        int groups = 0;
+        for (int value : values) { // O(n)
+            int slot = slot(value);
+            while (tableGroups[slot] != EMPTY && tableValues[slot] != value) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            if (tableGroups[slot] == EMPTY) {
+                tableValues[slot] = value;
+                tableGroups[slot] = groups;
+                distinct[groups++] = value;
+            }
+            counts[tableGroups[slot] + 1]++;
+        }
+
+        groupValues = Arrays.copyOf(distinct, groups);
+        offsets = Arrays.copyOf(counts, groups + 1);
+        for (int g = 0; g < groups; g++) {
+            offsets[g + 1] += offsets[g];
+        }
+
+        // place the indices, in increasing order since we visit them in order
+        postings = new int[values.length];
+        int[] next = Arrays.copyOf(offsets, groups);
+        for (int i = 0; i < values.length; i++) { // O(n)
+            postings[next[group(values[i])]++] = i;
+        }
+    }
+
+    /**
+     * Returns the group of the value or -1 if the array does not contain it.
+     */
+    public int group(int value) {
+        int mask = tableValues.length - 1;
+        for (int slot = slot(value); tableGroups[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (tableValues[slot] == value) {
+                return tableGroups[slot];
+            }
+        }
+        return EMPTY;
+    }
+
+    public int groups() {
+        return groupValues.length;
+    }
+
+    public int value(int group) {
+        return groupValues[group];
+    }
+
+    public int count(int group) {
+        return offsets[group + 1] - offsets[group];
+    }
+
+    /**
+     * The indices of the group are posting(groupStart(g)) ... posting(groupEnd(g) - 1).
+     */
+    public int groupStart(int group) {
+        return offsets[group];
+    }
+
+    public int groupEnd(int group) {
+        return offsets[group + 1];
+    }
+
+    public int posting(int position) {
+        return postings[position];
+    }
+
+    /**
+     * Returns the position of the first index of the group that is greater than the given index.
+     */
+    public int firstAfter(int group, int index) {
+        int low = offsets[group];
+        int high = offsets[group + 1];
+        while (low < high) { // O(log(n))
+            int middle = (low + high) >>> 1;
+            if (postings[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int slot(int value) {
+        // fibonacci hashing, the high bits of the product are well mixed
+        return (value * 0x9E3779B9) >>> tableShift;
+    }
+
+    /**
+     * The size of the table for n values, at most half full unless that would not fit in an array.
+     */
+    static int tableSize(int n) {
+        if (n >= MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException("Can not index " + n + " values, the limit is " + (MAX_TABLE_SIZE - 1));
+        }
+        return (int) Math.min(MAX_TABLE_SIZE, Long.highestOneBit(Math.max(n, 1) * 2L - 1) << 1);
+    }
+}
@@ -1,5 +1,13 @@
 package gr.headstart.algorithms;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Scanner;
 import java.util.logging.Logger;
 
@@ -12,6 +20,29 @@ import java.util.logging.Logger;
  * corresponding char in the n-i position. In this case the time complexity is O(n/2)
  * and the space complexity is constant.
  *
+ * Large payloads, like mirrored blocks of records, are usually bytes and not Strings, and building a String
+ * of them just to check it doubles the memory. So bytes can be checked directly, from an array, a ByteBuffer
+ * or a file which is memory mapped window by window from both of its ends. For bytes the same comparison
+ * is done 8 bytes at a time: the long at position i must be equal to the reversed bytes of the long that
+ * ends at position n-i, and when less than 16 bytes are left in the middle they are compared one by one.
+ * A long comparison is a single instruction instead of 8 compares and 8 branches, and it does not depend on
+ * the byte order of the buffer since both longs are read with the same one. The Vector API would compare
+ * even more bytes at once, but it is not available on the Java version we build for.
+ *
+ * A String is compared char by char, which are UTF-16 code units and not characters: an emoji is a pair of
+ * surrogate chars, and reversed it becomes a low surrogate followed by a high one, so an emoji between two
+ * "a" is not found to be a palindrome. Callers also want to ignore the case, the punctuation and the whitespace, and
+ * doing it with toLowerCase and replaceAll before the check makes two copies of the input. So the check can
+ * be given options:
+ *
+ * CODE_POINTS compares whole code points, the surrogate pairs are read as one character from both ends.
+ * IGNORE_CASE compares the characters like String.equalsIgnoreCase does.
+ * ALPHANUMERIC_ONLY skips any character that is not a letter or a digit, so "A man, a plan, a canal: Panama"
+ * is a palindrome together with IGNORE_CASE.
+ *
+ * With options the check still uses two cursors, one moving forward from the start and one backwards from
+ * the end, which skip the characters to ignore as they go. Nothing is copied and nothing is allocated.
+ *
  * @Author KouziaMi
  * @Date 5/1/2017.
  */
@@ -19,6 +50,38 @@ import java.util.logging.Logger;
 public class Palindrome {
     private final static Logger logger = Logger.getLogger(Palindrome.class.getName());
 
+    // the size of the windows mapped from each end of a file
+    static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    public enum Option {
+        CODE_POINTS, IGNORE_CASE, ALPHANUMERIC_ONLY
+    }
+
+    private final int windowSize;
+    private final boolean codePoints;
+    private final boolean ignoreCase;
+    private final boolean alphanumericOnly;
+
+    public Palindrome() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * A checker of Strings with the given options, the bytes are always compared as they are.
+     */
+    public Palindrome(Option... options) {
+        this(DEFAULT_WINDOW_SIZE, options);
+    }
+
+    Palindrome(int windowSize, Option... options) {
+        this.windowSize = windowSize;
+        EnumSet<Option> set = EnumSet.noneOf(Option.class);
+        set.addAll(Arrays.asList(options));
+        codePoints = set.contains(Option.CODE_POINTS);
+        ignoreCase = set.contains(Option.IGNORE_CASE);
+        alphanumericOnly = set.contains(Option.ALPHANUMERIC_ONLY);
+    }
+
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
 
@@ -33,6 +96,10 @@ public class Palindrome {
             return false;
         }
 
+        if (codePoints || ignoreCase || alphanumericOnly) {
+            return checkWithOptions(palindromeCandidate);
+        }
+
         final int n = palindromeCandidate.length();
         for (int i = 0; i < n /2; i++){ // O(n/2) = O(n)
             //Comparing each char starting from the beginning of the input to the
@@ -43,4 +110,128 @@ public class Palindrome {
         }
         return true;
     }
+
+    private boolean checkWithOptions(String palindromeCandidate) {
+        int i = 0;
+        int j = palindromeCandidate.length();
+        while (i < j) { // O(n)
+            // the character at the start, skipped if it is not to be compared
+            int first = codePoints ? palindromeCandidate.codePointAt(i) : palindromeCandidate.charAt(i);
+            int firstLength = codePoints ? Character.charCount(first) : 1;
+            if (alphanumericOnly && !Character.isLetterOrDigit(first)) {
+                i += firstLength;
+                continue;
+            }
+            // the character at the end
+            int last = codePoints ? palindromeCandidate.codePointBefore(j) : palindromeCandidate.charAt(j - 1);
+            int lastLength = codePoints ? Character.charCount(last) : 1;
+            if (alphanumericOnly && !Character.isLetterOrDigit(last)) {
+                j -= lastLength;
+                continue;
+            }
+            if (i + firstLength >= j) {
+                // it is the same character, the one in the middle
+                return true;
+            }
+            if (!equal(first, last)) {
+                return false;
+            }
+            i += firstLength;
+            j -= lastLength;
+        }
+        return true;
+    }
+
+    private boolean equal(int first, int last) {
+        if (first == last) {
+            return true;
+        }
+        // like String.equalsIgnoreCase, some characters are only equal in upper or only in lower case
+        return ignoreCase && (Character.toUpperCase(first) == Character.toUpperCase(last)
+                || Character.toLowerCase(first) == Character.toLowerCase(last));
+    }
+
+    public boolean check(byte[] palindromeCandidate) {
+        if (palindromeCandidate == null){
+            logger.warning("Input bytes are null");
+            return false;
+        }
+
+        return check(ByteBuffer.wrap(palindromeCandidate));
+    }
+
+    /**
+     * Checks the bytes between the position and the limit of the buffer, which are not changed.
+     */
+    public boolean check(ByteBuffer palindromeCandidate) {
+        if (palindromeCandidate == null){
+            logger.warning("Input buffer is null");
+            return false;
+        }
+
+        return isMirrored(palindromeCandidate, palindromeCandidate.position(),
+                palindromeCandidate, palindromeCandidate.limit(), palindromeCandidate.remaining() / 2);
+    }
+
+    /**
+     * Checks the bytes of a file, mapping a window from each end at a time so that files of any size can be
+     * checked.
+     */
+    public boolean check(Path palindromeCandidate) throws IOException {
+        if (palindromeCandidate == null){
+            logger.warning("Input file is null");
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(palindromeCandidate, StandardOpenOption.READ)) {
+            long start = 0;
+            long end = channel.size();
+            while (end - start > 1) {
+                // the middle byte of an odd length does not need to be compared to anything
+                int length = (int) Math.min(windowSize, (end - start) / 2);
+                MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, end - length, length);
+                if (!isMirrored(head, 0, tail, length, length)) {
+                    return false;
+                }
+                start += length;
+                end -= length;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Compares the length bytes of head after headStart to the length bytes of tail before tailEnd, read
+     * backwards.
+     */
+    static boolean isMirrored(ByteBuffer head, int headStart, ByteBuffer tail, int tailEnd, int length) {
+        int i = headStart;
+        int j = tailEnd;
+        int end = headStart + length;
+        while (end - i >= 2 * Long.BYTES) { // O(n/32)
+            // two longs from each end per branch, the differences are combined and tested once
+            long difference = (head.getLong(i) ^ Long.reverseBytes(tail.getLong(j - Long.BYTES)))
+                    | (head.getLong(i + Long.BYTES) ^ Long.reverseBytes(tail.getLong(j - 2 * Long.BYTES)));
+            if (difference != 0) {
+                return false;
+            }
+            i += 2 * Long.BYTES;
+            j -= 2 * Long.BYTES;
+        }
+        while (end - i >= Long.BYTES) {
+            // the 8 bytes from the start must be the 8 bytes from the end in reverse order
+            if (head.getLong(i) != Long.reverseBytes(tail.getLong(j - Long.BYTES))) {
+                return false;
+            }
+            i += Long.BYTES;
+            j -= Long.BYTES;
+        }
+        while (i < end) {
+            if (head.get(i++) != tail.get(--j)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
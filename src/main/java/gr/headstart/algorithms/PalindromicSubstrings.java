@@ -0,0 +1,163 @@
+package gr.headstart.algorithms;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Finds the longest palindromic substring of a line and counts all its palindromic substrings. Expanding
+ * around every center takes O(n^2) for a line like "aaaa...a", since each expansion goes all the way to the
+ * ends. Manacher's algorithm does both in O(n).
+ *
+ * The idea is to put a separator between the chars and at both ends, "abba" becomes "|a|b|b|a|", so that
+ * the palindromes of even and odd length both have a center in the new string. For each position we find
+ * the radius of the longest palindrome centered there, which is also its length in the original line. We
+ * remember the palindrome that reaches furthest to the right. A position inside it is the mirror of a
+ * position on its left, whose radius we already know, so the new radius starts from there (limited to the
+ * right end of the big palindrome) and only the part after the right end needs to be compared. The right
+ * end only moves forward, so all the comparisons together are O(n).
+ *
+ * The new string is never built, a position of it is mapped to a char of the line or to a separator, which
+ * is equal to any other separator. The radii are kept in an int array of 2n+1 elements that every thread
+ * reuses for all its lines, so nothing is allocated per line except the result. The chars are compared as
+ * they are, UTF-16 code units like {@link Palindrome#check(String)} does without options.
+ *
+ * A palindrome of radius r gives r/2 shorter palindromes with the same center, one for each radius r, r-2,
+ * ..., so the count of the palindromic substrings comes out of the same radii. Each occurrence is counted,
+ * so "aaa" has 6 of them.
+ *
+ * The lines of a batch are independent, so they are processed in parallel by the workers of a parallel
+ * stream, each with its own radius array.
+ */
+public class PalindromicSubstrings {
+
+    private final static Logger logger = Logger.getLogger(PalindromicSubstrings.class.getName());
+
+    // the radii of the last line, kept by every thread for its next line
+    private static final ThreadLocal<int[]> RADII = ThreadLocal.withInitial(() -> new int[256]);
+
+    public static void main(String[] args) {
+        Scanner scanner = new Scanner(System.in);
+
+        final String line = scanner.nextLine();
+        Result result = new PalindromicSubstrings().analyze(line);
+        logger.info("Longest palindrome of " + line + " is " + result.longest()
+                + ", it has " + result.count() + " palindromic substrings");
+    }
+
+    /**
+     * The longest palindromic substring and the number of palindromic substrings of the line.
+     */
+    public Result analyze(String line) {
+        if (line == null) {
+            logger.warning("Input string is null");
+            return null;
+        }
+
+        // position t of the virtual string is a separator when even and the char (t-1)/2 of the line when odd
+        int length = 2 * line.length() + 1;
+        int[] radii = radii(length);
+        int center = 0;
+        int right = 0;
+        int longestCenter = 0;
+        long count = 0;
+        for (int t = 0; t < length; t++) { // O(n), right only moves forward
+            // start from the radius of the mirror position, as far as the palindrome around center reaches
+            int radius = t < right ? Math.min(right - t, radii[2 * center - t]) : 0;
+            while (t - radius - 1 >= 0 && t + radius + 1 < length && same(line, t - radius - 1, t + radius + 1)) {
+                radius++;
+            }
+            radii[t] = radius;
+            if (t + radius > right) {
+                center = t;
+                right = t + radius;
+            }
+            if (radius > radii[longestCenter]) {
+                longestCenter = t;
+            }
+            // a char center has (radius + 1) / 2 palindromes around it, a separator radius / 2
+            count += (radius + (t & 1)) / 2;
+        }
+
+        int longestLength = radii[longestCenter];
+        return new Result(line, (longestCenter - longestLength) / 2, longestLength, count);
+    }
+
+    /**
+     * Analyzes the lines in parallel. The results are in the order of the lines, unless the stream is
+     * consumed with an unordered operation like forEach.
+     */
+    public Stream<Result> analyze(Stream<String> lines) {
+        return lines.parallel().map(this::analyze);
+    }
+
+    /**
+     * Analyzes the lines of a UTF-8 file in parallel. Close the stream to close the file.
+     */
+    public Stream<Result> analyze(Path file) throws IOException {
+        return analyze(Files.lines(file, StandardCharsets.UTF_8));
+    }
+
+    private static boolean same(String line, int left, int right) {
+        // both positions have the same parity, two separators are always equal
+        return (left & 1) == 0 || line.charAt(left >> 1) == line.charAt(right >> 1);
+    }
+
+    private static int[] radii(int length) {
+        int[] radii = RADII.get();
+        if (radii.length < length) {
+            radii = new int[Math.max(length, radii.length * 2)];
+            RADII.set(radii);
+        }
+        return radii;
+    }
+
+    public static final class Result {
+        private final String line;
+        private final int start;
+        private final int length;
+        private final long count;
+
+        Result(String line, int start, int length, long count) {
+            this.line = line;
+            this.start = start;
+            this.length = length;
+            this.count = count;
+        }
+
+        public String line() {
+            return line;
+        }
+
+        /**
+         * The first of the longest palindromic substrings.
+         */
+        public String longest() {
+            return line.substring(start, start + length);
+        }
+
+        public int longestStart() {
+            return start;
+        }
+
+        public int longestLength() {
+            return length;
+        }
+
+        /**
+         * The number of palindromic substrings, every occurrence counted.
+         */
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "{" + longest() + " : " + count + "}";
+        }
+    }
+}
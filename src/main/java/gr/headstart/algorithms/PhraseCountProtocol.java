@@ -0,0 +1,56 @@
+package gr.headstart.algorithms;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The messages between a {@link TopPhrasesCoordinator} and its {@link PhraseCountWorker}s. The coordinator
+ * opens one connection to every worker for a query and sends it requests, one after the other, each one
+ * answered before the next is sent:
+ *
+ *   TOP k           the k phrases of the worker with the highest counts
+ *   ABOVE t         the phrases with a count >= t, except those already sent on this connection
+ *   COUNTS phrases  the count of each of the phrases, 0 for the phrases the worker has not seen
+ *
+ * A request is its code followed by its argument. The phrases are sent as their UTF-8 bytes, so the worker
+ * never has to decode them:
+ *
+ *   phrase list     (int size, (int length, bytes, long count)*)   the answer of TOP and ABOVE
+ *   COUNTS          (int size, (int length, bytes)*)               answered with size longs
+ */
+final class PhraseCountProtocol {
+
+    static final byte TOP = 1;
+    static final byte ABOVE = 2;
+    static final byte COUNTS = 3;
+
+    // a phrase longer than this is surely a corrupted message
+    private static final int MAX_PHRASE_LENGTH = 64 * 1024 * 1024;
+
+    private PhraseCountProtocol() {
+    }
+
+    static void writePhrase(DataOutputStream output, byte[] phrase) throws IOException {
+        output.writeInt(phrase.length);
+        output.write(phrase);
+    }
+
+    static byte[] readPhrase(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > MAX_PHRASE_LENGTH) {
+            throw new IOException("Invalid phrase length " + length);
+        }
+        byte[] phrase = new byte[length];
+        input.readFully(phrase);
+        return phrase;
+    }
+
+    static int readSize(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid size " + size);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,246 @@
+package gr.headstart.algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Counts the phrases of the shards of a single host and answers the questions of a
+ * {@link TopPhrasesCoordinator} about them. The phrase logs are spread over many hosts and copying them
+ * all to a single one, or sending the counts of every distinct phrase, would move more data than the
+ * question is worth. Instead every host counts its own shards into a {@link PhraseTrie} and keeps it, and
+ * the coordinator asks only for the few phrases that may be in the global top.
+ *
+ * The worker listens on a socket and serves every connection on a thread of its own, from a pool of
+ * MAX_SESSIONS threads. When they are all busy the next connections wait in the backlog of the socket until
+ * a session ends, so a burst of connections can not exhaust the threads or the files of the host. A
+ * connection is a session: the worker remembers which phrases it has already sent on it, so the second phase of a query
+ * does not send them again. The trie is not modified while serving, so the sessions can read it
+ * together without locking. See {@link PhraseCountProtocol} for the requests.
+ *
+ * The phrases must be counted with the same normalizer on every host, otherwise the counts of the same
+ * phrase end up under different keys.
+ */
+public final class PhraseCountWorker implements Closeable {
+    private final static Logger logger = Logger.getLogger(PhraseCountWorker.class.getName());
+
+    // the connections served at once
+    static final int MAX_SESSIONS = 64;
+
+    private final PhraseNormalizer normalizer;
+    private final PhraseTrie trie = new PhraseTrie();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private ExecutorService sessions;
+
+    public PhraseCountWorker() {
+        this(PhraseNormalizer.DEFAULT);
+    }
+
+    /**
+     * @param normalizer applied to every phrase before it is counted
+     */
+    public PhraseCountWorker(PhraseNormalizer normalizer) {
+        this.normalizer = normalizer;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // read the arguments as "port shard1 shard2 ...", the worker serves until the process is killed
+        PhraseCountWorker worker = new PhraseCountWorker();
+        for (int i = 1; i < args.length; i++) {
+            worker.count(Paths.get(args[i]));
+        }
+        InetSocketAddress address = worker.start(new InetSocketAddress(Integer.parseInt(args[0])));
+        logger.info("Serving " + worker.distinct() + " phrases on " + address);
+        // the threads of the worker are daemons, keep the process alive while it serves
+        worker.acceptor.join();
+    }
+
+    /**
+     * Adds the phrases of a shard to the counts of this worker. All the shards must be counted before
+     * the worker is started.
+     */
+    public synchronized void count(Path shard) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("The worker is already serving its counts");
+        }
+        PhraseScanner.scan(shard, normalizer.wrap(trie::add));
+    }
+
+    /**
+     * The number of distinct phrases counted so far.
+     */
+    public synchronized int distinct() {
+        return trie.distinct();
+    }
+
+    /**
+     * Starts serving the counts on the address, port 0 picks a free port. Returns the address the worker
+     * listens on.
+     */
+    public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("The worker is already started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        ServerSocket server = serverSocket;
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_SESSIONS, runnable -> {
+            Thread thread = new Thread(runnable, "phrase-count-session");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sessions = executor;
+
+        acceptor = new Thread(() -> {
+            // a permit per session, a connection is accepted only when there is a thread to serve it
+            Semaphore permits = new Semaphore(MAX_SESSIONS);
+            while (!server.isClosed()) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                try {
+                    Socket socket = server.accept();
+                    executor.execute(() -> {
+                        try {
+                            serve(socket);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (IOException ioe) {
+                    permits.release();
+                    if (!server.isClosed()) {
+                        logger.warning("Could not accept a connection: " + ioe);
+                    }
+                }
+            }
+        }, "phrase-count-worker");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    /**
+     * Stops accepting connections and returns when the acceptor thread has stopped. The sessions in progress
+     * are served until the coordinator closes them.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+            // closing the socket stops an accept, but not a wait for a permit when all the sessions are busy
+            acceptor.interrupt();
+            sessions.shutdown();
+            try {
+                acceptor.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+             DataInputStream input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            // the phrases sent on this connection, by node
+            BitSet sent = new BitSet();
+            while (true) {
+                int request = input.read();
+                if (request < 0) {
+                    return;
+                }
+                switch (request) {
+                    case PhraseCountProtocol.TOP:
+                        top(input.readInt(), sent, output);
+                        break;
+                    case PhraseCountProtocol.ABOVE:
+                        above(input.readLong(), sent, output);
+                        break;
+                    case PhraseCountProtocol.COUNTS:
+                        counts(input, output);
+                        break;
+                    default:
+                        throw new IOException("Unknown request " + request);
+                }
+                output.flush();
+            }
+        } catch (EOFException eofe) {
+            logger.warning("The coordinator closed the connection in the middle of a request");
+        } catch (IOException ioe) {
+            logger.warning("Could not serve " + socket.getRemoteSocketAddress() + ": " + ioe);
+        }
+    }
+
+    private void top(int k, BitSet sent, DataOutputStream output) throws IOException {
+        TopKSelector selector = TopKSelector.select(trie, Math.max(k, 0));
+        output.writeInt(selector.size());
+        for (int i = 0; i < selector.size(); i++) {
+            writePhrase(selector.node(i), selector.count(i), sent, output);
+        }
+    }
+
+    private void above(long threshold, BitSet sent, DataOutputStream output) throws IOException {
+        // the phrases are streamed, so count them first
+        int size = 0;
+        for (int node = 1; node < trie.size(); node++) { // O(n)
+            if (isAbove(node, threshold, sent)) {
+                size++;
+            }
+        }
+        output.writeInt(size);
+        for (int node = 1; node < trie.size(); node++) { // O(n)
+            if (isAbove(node, threshold, sent)) {
+                writePhrase(node, trie.count(node), sent, output);
+            }
+        }
+    }
+
+    private boolean isAbove(int node, long threshold, BitSet sent) {
+        long count = trie.count(node);
+        return count > 0 && count >= threshold && !sent.get(node);
+    }
+
+    private void writePhrase(int node, long count, BitSet sent, DataOutputStream output) throws IOException {
+        PhraseCountProtocol.writePhrase(output, trie.bytes(node));
+        output.writeLong(count);
+        sent.set(node);
+    }
+
+    private void counts(DataInputStream input, DataOutputStream output) throws IOException {
+        int size = PhraseCountProtocol.readSize(input);
+        // the size comes from the network, so the array grows with the phrases that actually arrive
+        long[] counts = new long[Math.min(size, 1 << 16)];
+        for (int i = 0; i < size; i++) {
+            byte[] phrase = PhraseCountProtocol.readPhrase(input);
+            int node = trie.find(ByteBuffer.wrap(phrase), 0, phrase.length);
+            if (i == counts.length) {
+                counts = Arrays.copyOf(counts, (int) Math.min(size, 2L * counts.length));
+            }
+            // the empty phrase is the root, which is never counted
+            counts[i] = node == PhraseTrie.NO_NODE ? 0 : trie.count(node);
+        }
+        for (int i = 0; i < size; i++) {
+            output.writeLong(counts[i]);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package gr.headstart.algorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+/**
+ * Writes phrase files like the ones {@link TopPhrases} reads, 50 phrases per line separated by " | ", of
+ * any size, so that the algorithms can be tried on the sizes they are meant for and not only on a few test
+ * lines. Everything comes from the seed, the same parameters always give the same file.
+ *
+ * There are distinctPhrases phrases. The phrase of rank r is chosen with a probability proportional to
+ * 1 / r^skew, which is the Zipf distribution of the words of a text or the searches of a log: a few phrases
+ * are very frequent and most of them are rare. A skew of 0 chooses all of them with the same probability.
+ * The length of each phrase is chosen once, uniformly between minLength and maxLength. A phrase starts with
+ * its rank in base 36, which makes it unique, and goes on with letters and single spaces. It never starts or
+ * ends with a space, so trimming does not change it.
+ *
+ * The phrases are chosen with the alias method, which takes O(1) per phrase no matter how many distinct
+ * phrases there are: a table of distinctPhrases columns where each column holds the probability of its own
+ * phrase and the phrase that fills the rest of it. A phrase is chosen with a random column and a random
+ * number compared to its probability. The bytes of all the phrases are encoded once and the lines are built
+ * in a direct buffer that is written to a FileChannel when full, so writing runs at the speed of the disk.
+ *
+ * While writing, the generator counts how many times each phrase was written. These counts are the ground
+ * truth the results of TopPhrases are checked against.
+ */
+public final class PhraseFileGenerator {
+
+    private final static Logger logger = Logger.getLogger(PhraseFileGenerator.class.getName());
+
+    public static final int PHRASES_PER_LINE = 50;
+    private static final byte[] SEPARATOR = " | ".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final long seed;
+    private final byte[][] phrases;
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    /**
+     * @param seed            the seed of all the random choices
+     * @param distinctPhrases the number of distinct phrases
+     * @param skew            the exponent of the Zipf distribution, 0 for uniform
+     * @param minLength       the minimum length of a phrase in bytes
+     * @param maxLength       the maximum length of a phrase in bytes
+     */
+    public PhraseFileGenerator(long seed, int distinctPhrases, double skew, int minLength, int maxLength) {
+        if (distinctPhrases <= 0 || skew < 0 || minLength <= 0 || maxLength < minLength) {
+            throw new IllegalArgumentException("Invalid parameters: distinct phrases " + distinctPhrases
+                    + ", skew " + skew + ", length " + minLength + " to " + maxLength);
+        }
+        this.seed = seed;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        phrases = new byte[distinctPhrases][];
+        for (int i = 0; i < distinctPhrases; i++) {
+            phrases[i] = phrase(i + 1, minLength + random.nextInt(maxLength - minLength + 1), random);
+        }
+
+        double[] weights = new double[distinctPhrases];
+        for (int rank = 1; rank <= distinctPhrases; rank++) {
+            weights[rank - 1] = 1 / Math.pow(rank, skew);
+        }
+        probabilities = new double[distinctPhrases];
+        aliases = new int[distinctPhrases];
+        buildAliasTable(weights);
+    }
+
+    /**
+     * Writes a file of 50 phrases per line, adding lines until it is at least targetBytes long. Returns how
+     * many times the phrase of each rank was written, the phrase of rank r at index r - 1.
+     */
+    public long[] generate(Path file, long targetBytes) throws IOException {
+        long[] counts = new long[phrases.length];
+        // the phrases of the file do not depend on the phrases of the constructor, only on the seed
+        SplittableRandom random = new SplittableRandom(seed).split();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (written < targetBytes) {
+                for (int i = 0; i < PHRASES_PER_LINE; i++) {
+                    int index = next(random);
+                    counts[index]++;
+                    byte[] phrase = phrases[index];
+                    if (buffer.remaining() < phrase.length + SEPARATOR.length) {
+                        written += write(channel, buffer);
+                    }
+                    if (i > 0) {
+                        buffer.put(SEPARATOR);
+                    }
+                    buffer.put(phrase);
+                }
+                if (!buffer.hasRemaining()) {
+                    written += write(channel, buffer);
+                }
+                buffer.put((byte) '\n');
+                if (written + buffer.position() >= targetBytes) {
+                    break;
+                }
+            }
+            written += write(channel, buffer);
+        }
+        return counts;
+    }
+
+    public int distinctPhrases() {
+        return phrases.length;
+    }
+
+    /**
+     * The phrase of a rank, from 1 for the most frequent.
+     */
+    public String phrase(int rank) {
+        return new String(phrases[rank - 1], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a file from the command line: file, size in MB, distinct phrases, skew, min length, max length
+     * and seed.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 7) {
+            logger.warning("Usage: file sizeInMB distinctPhrases skew minLength maxLength seed");
+            return;
+        }
+        PhraseFileGenerator generator = new PhraseFileGenerator(Long.parseLong(args[6]), Integer.parseInt(args[2]),
+                Double.parseDouble(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+        long start = System.nanoTime();
+        generator.generate(Paths.get(args[0]), Long.parseLong(args[1]) * 1024 * 1024);
+        logger.info("Generated " + args[0] + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    private int next(SplittableRandom random) {
+        int column = random.nextInt(probabilities.length);
+        return random.nextDouble() < probabilities[column] ? column : aliases[column];
+    }
+
+    // Vose's alias method, the columns with less than the average weight are filled from those with more
+    private void buildAliasTable(double[] weights) {
+        int n = weights.length;
+        double sum = 0;
+        for (double weight : weights) {
+            sum += weight;
+        }
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / sum;
+            (scaled[i] < 1 ? small : large).push(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            (scaled[more] < 1 ? small : large).push(more);
+        }
+        // what is left is 1 up to the rounding errors
+        while (!large.isEmpty()) {
+            probabilities[large.pop()] = 1;
+        }
+        while (!small.isEmpty()) {
+            probabilities[small.pop()] = 1;
+        }
+    }
+
+    private static byte[] phrase(int rank, int length, SplittableRandom random) {
+        byte[] id = Integer.toString(rank, 36).getBytes(StandardCharsets.US_ASCII);
+        // the rank alone, or the rank, a space and at least one letter, so no phrase is the rank of another one
+        byte[] phrase = new byte[length <= id.length + 1 ? id.length : length];
+        System.arraycopy(id, 0, phrase, 0, id.length);
+        for (int i = id.length; i < phrase.length; i++) {
+            // a space after the rank, so that the rank stays a word of its own, and never at the end
+            boolean space = i == id.length || (i < phrase.length - 1 && phrase[i - 1] != ' ' && random.nextInt(6) == 0);
+            phrase[i] = space ? (byte) ' ' : (byte) ('a' + random.nextInt(26));
+        }
+        return phrase;
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+}
@@ -0,0 +1,340 @@
+package gr.headstart.algorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.logging.Logger;
+
+/**
+ * A read only copy of the counted phrases that answers queries, like "the top 20 phrases that start with
+ * Olympics" or "how many times was PGA found". The trie we count into is built for adding phrases: its
+ * edges are in a hash table, so the children of a node can not be listed without scanning the whole table,
+ * and a top K query has to look at every node. Once the counting is done we can afford a layout that is
+ * made for reading instead.
+ *
+ * The nodes are renumbered in depth first order, visiting the children of a node by their byte. The
+ * children of every node are stored together and sorted, like a CSR matrix: the children of node n are
+ * children[offsets[n], offsets[n + 1]), so finding a child is a binary search over at most 256 entries.
+ * Since the ids follow the order of the phrases, comparing two phrases by their bytes is comparing their
+ * ids.
+ *
+ * Every node also keeps the highest count in its subtree. The top K phrases under a prefix are found with
+ * a best first search: a heap holds the subtrees we have not opened yet by their highest count and the
+ * phrases we have met by their count, and the best entry is taken each time. When a phrase comes out of
+ * the heap nothing that is left can beat it, so the search stops after K phrases and the subtrees that
+ * can not make it to the results are never opened. A query costs O(p + K * log(K)) for a prefix of p bytes
+ * when the best phrases are found quickly, and never more than a walk of the subtree of the prefix.
+ * Equal counts are resolved by the phrase, like the {@link TopKSelector} does, so the query with an empty
+ * prefix gives exactly the results of {@link TopPhrases#find(String, int)}.
+ *
+ * The queries are normalized with the normalizer the phrases were counted with, so "pga " finds "PGA" if
+ * the phrases were trimmed and folded to lower case. The whitespace at the end of a prefix is kept, as a
+ * single space, since "Olympics " should not match "Olympicsx".
+ *
+ * A node costs 29 bytes: 1 for the byte, 8 for the count, 8 for the highest count, 4 for the parent and 8
+ * for the children offsets. The index is never modified after it is built and all its fields are final,
+ * so it can be shared by any number of threads without locking.
+ */
+public final class PhraseIndex {
+    private final static Logger logger = Logger.getLogger(PhraseIndex.class.getName());
+
+    private static final int ROOT = 0;
+
+    private final PhraseNormalizer normalizer;
+    private final byte[] labels;
+    private final long[] counts;
+    // the highest count of the subtree of each node, including the node itself
+    private final long[] maxCounts;
+    private final int[] parents;
+    private final int[] offsets;
+    private final int[] children;
+    private final int distinct;
+
+    /**
+     * Copies the counts of the trie, which can be thrown away afterwards.
+     *
+     * @param normalizer the normalizer the phrases of the trie were counted with
+     */
+    PhraseIndex(PhraseTrie trie, PhraseNormalizer normalizer) {
+        this.normalizer = normalizer;
+        int size = trie.size();
+        int[] trieOffsets = trie.childOffsets();
+        int[] trieChildren = trie.sortedChildren(trieOffsets);
+
+        // number the nodes depth first, the smallest child first, order[id] is the node of the trie
+        int[] order = new int[size];
+        int[] ids = new int[size];
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = PhraseTrie.ROOT;
+        int next = 0;
+        while (top > 0) { // O(n)
+            int node = stack[--top];
+            ids[node] = next;
+            order[next++] = node;
+            int from = trieOffsets[node];
+            int to = trieOffsets[node + 1];
+            if (top + to - from > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + to - from));
+            }
+            for (int i = to - 1; i >= from; i--) {
+                stack[top++] = trieChildren[i];
+            }
+        }
+
+        labels = new byte[size];
+        counts = new long[size];
+        parents = new int[size];
+        offsets = new int[size + 1];
+        children = new int[size - 1];
+        int distinct = 0;
+        for (int id = 0; id < size; id++) { // O(n)
+            int node = order[id];
+            labels[id] = trie.label(node);
+            counts[id] = trie.count(node);
+            parents[id] = node == PhraseTrie.ROOT ? PhraseTrie.NO_NODE : ids[trie.parent(node)];
+            if (counts[id] > 0) {
+                distinct++;
+            }
+            int from = trieOffsets[node];
+            int to = trieOffsets[node + 1];
+            offsets[id + 1] = offsets[id] + to - from;
+            for (int i = from; i < to; i++) {
+                children[offsets[id] + i - from] = ids[trieChildren[i]];
+            }
+        }
+        this.distinct = distinct;
+
+        // a child always has a bigger id than its parent, so going backwards every subtree is done
+        // before its parent is reached
+        maxCounts = Arrays.copyOf(counts, size);
+        for (int id = size - 1; id > ROOT; id--) { // O(n)
+            int parent = parents[id];
+            if (maxCounts[id] > maxCounts[parent]) {
+                maxCounts[parent] = maxCounts[id];
+            }
+        }
+    }
+
+    /**
+     * Builds an index from a snapshot written by {@link StreamingTopPhrases#save(Path)}, for example by a
+     * nightly job.
+     *
+     * @param normalizer the normalizer the phrases of the snapshot were counted with
+     */
+    public static PhraseIndex load(Path snapshot, PhraseNormalizer normalizer) throws IOException {
+        PhraseTrie trie = new PhraseTrie();
+        PhraseSnapshot.load(snapshot, trie);
+        return new PhraseIndex(trie, normalizer);
+    }
+
+    /**
+     * The count of the phrase, 0 if it was never found.
+     */
+    public long count(String phrase) {
+        if (phrase == null) {
+            logger.warning("Phrase must not be null");
+            return 0;
+        }
+
+        // the root is the empty phrase, which is never counted
+        int node = find(normalize(phrase, false));
+        return node < 0 ? 0 : counts[node];
+    }
+
+    /**
+     * The phrases with the highest counts among those that start with the prefix, with the minimum count
+     * at the head of the queue like the one returned by {@link TopPhrases#find(String, int)}. An empty
+     * prefix gives the top phrases of all.
+     */
+    public Queue<TopPhrases.Phrase> top(String prefix, int numOfTopElements) {
+        if (prefix == null) {
+            logger.warning("Prefix must not be null");
+            return null;
+        }
+
+        if (numOfTopElements <= 0) {
+            logger.warning("Number of top elements must be a positive integer");
+            return null;
+        }
+
+        Queue<TopPhrases.Phrase> results = new PriorityQueue<>();
+        int start = find(normalize(prefix, true));
+        if (start < 0 || maxCounts[start] == 0) {
+            return results;
+        }
+
+        Frontier frontier = new Frontier();
+        frontier.push(maxCounts[start], start);
+        while (results.size() < numOfTopElements && !frontier.isEmpty()) {
+            int entry = frontier.pop();
+            if (entry < 0) {
+                // a phrase, nothing left in the frontier can beat it
+                int node = ~entry;
+                results.add(new TopPhrases.Phrase(counts[node], phrase(node)));
+                continue;
+            }
+
+            // open the subtree, the node itself becomes a phrase and its children become subtrees
+            if (counts[entry] > 0) {
+                frontier.push(counts[entry], ~entry);
+            }
+            for (int i = offsets[entry]; i < offsets[entry + 1]; i++) {
+                int child = children[i];
+                if (maxCounts[child] > 0) {
+                    frontier.push(maxCounts[child], child);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The number of distinct phrases.
+     */
+    public int distinct() {
+        return distinct;
+    }
+
+    /**
+     * The heap used by the arrays of the index, in bytes.
+     */
+    public long memoryUsage() {
+        return (long) labels.length * (1 + 8 + 8 + 4 + 4) + (long) children.length * 4;
+    }
+
+    private int find(byte[] phrase) {
+        int node = ROOT;
+        for (int i = 0; i < phrase.length && node >= 0; i++) { // O(p)
+            node = child(node, phrase[i] & 0xFF);
+        }
+        return node;
+    }
+
+    private int child(int node, int label) {
+        int low = offsets[node];
+        int high = offsets[node + 1];
+        while (low < high) { // O(log(256))
+            int middle = (low + high) >>> 1;
+            int middleLabel = labels[children[middle]] & 0xFF;
+            if (middleLabel == label) {
+                return children[middle];
+            } else if (middleLabel < label) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return -1;
+    }
+
+    private String phrase(int node) {
+        int depth = 0;
+        for (int n = node; n != ROOT; n = parents[n]) {
+            depth++;
+        }
+        byte[] bytes = new byte[depth];
+        for (int i = depth - 1; i >= 0; i--) {
+            bytes[i] = labels[node];
+            node = parents[node];
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // runs the query through a stage of the normalizer, a stage is not thread safe so every query has its own
+    private byte[] normalize(String query, boolean prefix) {
+        byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+        byte[][] normalized = {bytes};
+        normalizer.wrap((buffer, from, to) -> {
+            byte[] copy = new byte[to - from];
+            for (int i = from; i < to; i++) {
+                copy[i - from] = buffer.get(i);
+            }
+            normalized[0] = copy;
+        }).accept(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+        byte[] result = normalized[0];
+        boolean trailingWhitespace = bytes.length > 0 && PhraseNormalizer.isWhitespace(bytes[bytes.length - 1]);
+        if (prefix && trailingWhitespace && result.length > 0
+                && !PhraseNormalizer.isWhitespace(result[result.length - 1])) {
+            // the normalizer trimmed the end of the prefix, but there a space ends a word
+            result = Arrays.copyOf(result, result.length + 1);
+            result[result.length - 1] = ' ';
+        }
+        return result;
+    }
+
+    /**
+     * A max heap of entries, the subtrees by their highest count and the phrases by their count. An entry is
+     * the id of the node for a subtree and ~id for a phrase. For equal counts the smaller id, which is the
+     * smaller phrase, comes first. A subtree and the phrase of the same node are never in the heap together.
+     */
+    private static final class Frontier {
+        private long[] keys = new long[64];
+        private int[] entries = new int[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(long key, int entry) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            int i = size++;
+            while (i > 0) { // O(log(n))
+                int parent = (i - 1) >>> 1;
+                if (!isBefore(key, entry, keys[parent], entries[parent])) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                entries[i] = entries[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            entries[i] = entry;
+        }
+
+        int pop() {
+            int top = entries[0];
+            long key = keys[--size];
+            int entry = entries[size];
+            int i = 0;
+            while (true) { // O(log(n))
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && isBefore(keys[child + 1], entries[child + 1], keys[child], entries[child])) {
+                    child++;
+                }
+                if (!isBefore(keys[child], entries[child], key, entry)) {
+                    break;
+                }
+                keys[i] = keys[child];
+                entries[i] = entries[child];
+                i = child;
+            }
+            keys[i] = key;
+            entries[i] = entry;
+            return top;
+        }
+
+        private static boolean isBefore(long key, int entry, long otherKey, int otherEntry) {
+            if (key != otherKey) {
+                return key > otherKey;
+            }
+            return id(entry) < id(otherEntry);
+        }
+
+        private static int id(int entry) {
+            return entry < 0 ? ~entry : entry;
+        }
+    }
+}
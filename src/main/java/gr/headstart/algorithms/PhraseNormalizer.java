@@ -0,0 +1,229 @@
+package gr.headstart.algorithms;
+
+import java.nio.ByteBuffer;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * Brings the phrases to a canonical form before they are counted. The phrases of a line are separated by
+ * pipes that usually have spaces around them ("Foobar Candy | Olympics 2012 | PGA"), so without any
+ * normalization "PGA ", " PGA " and " PGA" are counted as three different phrases. This splits their counts
+ * and adds nodes to the trie for nothing.
+ *
+ * The normalizer sits between the {@link PhraseScanner} and the counter and works on the byte windows of
+ * the scanner, so no String is created for a phrase:
+ *
+ * TRIM removes the whitespace at both ends. It only moves the ends of the window, nothing is copied.
+ * COLLAPSE_WHITESPACE replaces every run of whitespace with a single space.
+ * LOWER_CASE folds the phrase to lower case.
+ * NFC brings the phrase to Unicode normalization form C, so that "e" followed by a combining accent
+ * and the precomposed accented "e" are the same phrase.
+ *
+ * The options other than TRIM change the bytes, so the phrase is written into a scratch array that is
+ * reused for all the phrases. Pure ASCII phrases, which are most of them, are handled byte by byte. Other
+ * phrases are decoded into a reused StringBuilder, processed by code point and encoded back. NFC is done
+ * with java.text.Normalizer, which allocates, but only for the phrases that are not already normalized.
+ *
+ * A normalizer is immutable and can be shared. The stages it creates with {@link #wrap} are not thread
+ * safe, every thread needs its own.
+ */
+public final class PhraseNormalizer {
+
+    public enum Option {
+        TRIM, COLLAPSE_WHITESPACE, LOWER_CASE, NFC
+    }
+
+    /**
+     * Counts the phrases exactly as they are in the file.
+     */
+    public static final PhraseNormalizer NONE = new PhraseNormalizer(EnumSet.noneOf(Option.class));
+
+    /**
+     * Only removes the whitespace around the phrases, used when no normalizer is given.
+     */
+    public static final PhraseNormalizer DEFAULT = new PhraseNormalizer(EnumSet.of(Option.TRIM));
+
+    private final boolean trim;
+    private final boolean collapseWhitespace;
+    private final boolean lowerCase;
+    private final boolean nfc;
+
+    private PhraseNormalizer(EnumSet<Option> options) {
+        trim = options.contains(Option.TRIM);
+        collapseWhitespace = options.contains(Option.COLLAPSE_WHITESPACE);
+        lowerCase = options.contains(Option.LOWER_CASE);
+        nfc = options.contains(Option.NFC);
+    }
+
+    public static PhraseNormalizer of(Option... options) {
+        EnumSet<Option> set = EnumSet.noneOf(Option.class);
+        set.addAll(Arrays.asList(options));
+        return new PhraseNormalizer(set);
+    }
+
+    /**
+     * Returns a consumer that normalizes the phrases and passes them to the downstream consumer.
+     */
+    PhraseScanner.PhraseConsumer wrap(PhraseScanner.PhraseConsumer downstream) {
+        if (!trim && !collapseWhitespace && !lowerCase && !nfc) {
+            return downstream;
+        }
+        return new Stage(downstream);
+    }
+
+    // the same bytes as Character.isWhitespace for ASCII
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+    }
+
+    private class Stage implements PhraseScanner.PhraseConsumer {
+        private final PhraseScanner.PhraseConsumer downstream;
+        private byte[] scratch = new byte[256];
+        private ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+        private final StringBuilder chars = new StringBuilder();
+
+        Stage(PhraseScanner.PhraseConsumer downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void accept(ByteBuffer buffer, int from, int to) {
+            if (trim) {
+                while (from < to && isWhitespace(buffer.get(from))) {
+                    from++;
+                }
+                while (to > from && isWhitespace(buffer.get(to - 1))) {
+                    to--;
+                }
+            }
+            if (!collapseWhitespace && !lowerCase && !nfc) {
+                // trimming alone does not need a copy
+                downstream.accept(buffer, from, to);
+                return;
+            }
+
+            int length = isAscii(buffer, from, to) ? normalizeAscii(buffer, from, to) : normalizeUnicode(buffer, from, to);
+            downstream.accept(scratchBuffer, 0, length);
+        }
+
+        private boolean isAscii(ByteBuffer buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // ASCII is always in NFC, only the whitespace and the case need work
+        private int normalizeAscii(ByteBuffer buffer, int from, int to) {
+            ensureCapacity(to - from);
+            int length = 0;
+            boolean previousWhitespace = false;
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if (collapseWhitespace && isWhitespace(b)) {
+                    if (previousWhitespace) {
+                        continue;
+                    }
+                    previousWhitespace = true;
+                    b = ' ';
+                } else {
+                    previousWhitespace = false;
+                    if (lowerCase && b >= 'A' && b <= 'Z') {
+                        b += 'a' - 'A';
+                    }
+                }
+                scratch[length++] = b;
+            }
+            return length;
+        }
+
+        private int normalizeUnicode(ByteBuffer buffer, int from, int to) {
+            chars.setLength(0);
+            boolean previousWhitespace = false;
+            int i = from;
+            while (i < to) {
+                int b = buffer.get(i) & 0xFF;
+                // lead bytes from 0xF5 on start sequences above U+10FFFF, they never appear in UTF-8
+                int extra = b < 0x80 ? 0 : b >= 0xF5 ? -1 : b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : b >= 0xC0 ? 1 : -1;
+                int codePoint = extra > 0 ? b & (0x3F >> extra) : b;
+                for (int j = 1; j <= extra; j++) {
+                    int next = i + j < to ? buffer.get(i + j) & 0xFF : 0;
+                    if ((next & 0xC0) != 0x80) {
+                        extra = -1;
+                        break;
+                    }
+                    codePoint = (codePoint << 6) | (next & 0x3F);
+                }
+                if (codePoint > Character.MAX_CODE_POINT) {
+                    // 0xF4 followed by 0x90 or more, appendCodePoint would throw
+                    extra = -1;
+                }
+                if (extra < 0) {
+                    // not a valid sequence, decode the byte as a replacement character like String does
+                    codePoint = 0xFFFD;
+                    i++;
+                } else {
+                    i += extra + 1;
+                }
+
+                if (collapseWhitespace && Character.isWhitespace(codePoint)) {
+                    if (previousWhitespace) {
+                        continue;
+                    }
+                    previousWhitespace = true;
+                    codePoint = ' ';
+                } else {
+                    previousWhitespace = false;
+                    if (lowerCase) {
+                        codePoint = Character.toLowerCase(codePoint);
+                    }
+                }
+                chars.appendCodePoint(codePoint);
+            }
+
+            CharSequence normalized = chars;
+            if (nfc && !Normalizer.isNormalized(chars, Normalizer.Form.NFC)) {
+                normalized = Normalizer.normalize(chars, Normalizer.Form.NFC);
+            }
+            return encode(normalized);
+        }
+
+        private int encode(CharSequence text) {
+            // at most 3 bytes per char, a surrogate pair is 2 chars for 4 bytes
+            ensureCapacity(text.length() * 3);
+            int length = 0;
+            for (int i = 0; i < text.length(); i++) {
+                int codePoint = Character.codePointAt(text, i);
+                if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    i++;
+                }
+                if (codePoint < 0x80) {
+                    scratch[length++] = (byte) codePoint;
+                } else if (codePoint < 0x800) {
+                    scratch[length++] = (byte) (0xC0 | (codePoint >> 6));
+                    scratch[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (codePoint < 0x10000) {
+                    scratch[length++] = (byte) (0xE0 | (codePoint >> 12));
+                    scratch[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    scratch[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    scratch[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    scratch[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    scratch[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    scratch[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                }
+            }
+            return length;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (scratch.length < capacity) {
+                scratch = new byte[Math.max(capacity, scratch.length * 2)];
+                scratchBuffer = ByteBuffer.wrap(scratch);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package gr.headstart.algorithms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Temporary run files that split the phrases of a file by their hash. All the occurrences of a phrase end
+ * up in the same partition, so each partition can be counted on its own and the counts are still exact.
+ * When the distinct phrases of a file do not fit in memory, they can be counted one partition at a time
+ * with a memory footprint of one partition.
+ *
+ * A partition file has one phrase per line. The files and their buffers are {@link SpillPartitions}, so
+ * there are never more than SpillPartitions.MAX_FAN_OUT partitions at once. When a partition is still too
+ * big it is split again into partitions of its own, with a different level. Each level hashes the phrases
+ * with another seed, otherwise all the phrases of a partition would end up in the same partition again.
+ *
+ * The partitions are deleted with their temporary directory when they are closed.
+ */
+final class PhrasePartitions implements Closeable {
+
+    private final int level;
+    private final SpillPartitions partitions;
+
+    PhrasePartitions(Path parent, int partitions, int bufferSize, int level) throws IOException {
+        this.level = level;
+        this.partitions = new SpillPartitions(parent, "top-phrases", partitions, bufferSize, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Appends the phrase [from, to) of the buffer to its partition. Empty phrases are ignored.
+     */
+    public void add(ByteBuffer buffer, int from, int to) {
+        if (to <= from) {
+            return;
+        }
+
+        int partition = partitionOf(buffer, from, to, partitions.size(), level);
+        try {
+            int i = from;
+            while (i < to) {
+                // a phrase may be longer than the buffer, so it can be written in the middle of it
+                ByteBuffer out = partitions.buffer(partition, 1);
+                int end = Math.min(to, i + out.remaining());
+                for (; i < end; i++) {
+                    out.put(buffer.get(i));
+                }
+            }
+            partitions.buffer(partition, 1).put((byte) '\n');
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Writes what is left in the buffers and closes the files for writing. No phrase can be added afterwards.
+     */
+    public void flush() throws IOException {
+        partitions.flush();
+    }
+
+    public int size() {
+        return partitions.size();
+    }
+
+    /**
+     * 0 for the partitions of the input, 1 for the partitions of a partition and so on.
+     */
+    public int level() {
+        return level;
+    }
+
+    public Path file(int partition) {
+        return partitions.file(partition);
+    }
+
+    /**
+     * The size of the largest partition file, after they are flushed.
+     */
+    public long largest() throws IOException {
+        return partitions.largest();
+    }
+
+    /**
+     * Deletes a partition that is not needed anymore, to give back the disk space as soon as possible.
+     */
+    public void delete(int partition) throws IOException {
+        partitions.delete(partition);
+    }
+
+    @Override
+    public void close() throws IOException {
+        partitions.close();
+    }
+
+    static int partitionOf(ByteBuffer buffer, int from, int to, int partitions, int level) {
+        // FNV-1a over the bytes of the phrase
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+        // FNV has weak low bits, mix them with the finalizer of MurmurHash3 before taking the remainder. The
+        // seed of the level goes in before the mixing, so the levels split the phrases independently.
+        hash += level * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, partitions);
+    }
+}
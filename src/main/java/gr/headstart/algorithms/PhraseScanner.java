@@ -0,0 +1,221 @@
+package gr.headstart.algorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Splits a phrase file into phrases without decoding it. Reading the file line by line as Strings
+ * means that every byte is decoded to a char, every line goes through a regex split and every phrase
+ * is copied once more into its own substring before we even start counting. For files of many GBs
+ * this is where the time goes, not the disk.
+ *
+ * Instead the file is memory mapped in chunks using FileChannel.map and the raw bytes are scanned for
+ * the '|' and '\n' delimiters. Since both delimiters are ASCII they can never appear inside a multi-byte
+ * UTF-8 sequence, so splitting on bytes gives exactly the same phrases as splitting the decoded text.
+ * Each phrase is handed to a consumer as a window (buffer, from, to) over the mapped bytes and it is up
+ * to the consumer to decide if it will ever become a String.
+ *
+ * The delimiters are searched 8 bytes at a time: a long is read from the buffer and with a couple of
+ * bitwise operations we can tell if any of its bytes is a '|' or a '\n'. Only the words that contain
+ * a delimiter are scanned byte by byte.
+ *
+ * Each chunk is cut after its last line break, so a line is never split between two mappings. A line
+ * longer than the chunk size is handled by mapping a bigger chunk.
+ */
+final class PhraseScanner {
+
+    // FileChannel.map can not map more than Integer.MAX_VALUE bytes at once
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final long PIPES = 0x7C7C7C7C7C7C7C7CL;
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * Receives the phrases found by the scanner. The window [from, to) is only valid during the call,
+     * the buffer may be unmapped or reused afterwards.
+     */
+    interface PhraseConsumer {
+        void accept(ByteBuffer buffer, int from, int to);
+
+        /**
+         * Called after each chunk of a file, with the bytes and the lines it had.
+         */
+        default void chunkScanned(long bytes, long lines) {
+        }
+    }
+
+    private PhraseScanner() {
+    }
+
+    public static void scan(Path file, PhraseConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scan(channel, 0, channel.size(), DEFAULT_CHUNK_SIZE, consumer);
+        }
+    }
+
+    /**
+     * Scans the bytes [start, end) of the channel. The range must start at the beginning of a line.
+     */
+    public static void scan(FileChannel channel, long start, long end, int chunkSize,
+                            PhraseConsumer consumer) throws IOException {
+        long position = start;
+        long mapSize = chunkSize;
+        while (position < end) {
+            long length = Math.min(mapSize, end - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            int limit = (int) length;
+            if (position + length < end) {
+                // do not split the last line of the chunk, it will be scanned with the next one
+                int lastBreak = lastIndexOf(buffer, limit, (byte) '\n');
+                if (lastBreak < 0) {
+                    // the line does not fit in the chunk, try again with a bigger one
+                    if (mapSize == Integer.MAX_VALUE) {
+                        throw new IOException("Line at position " + position + " is too long to be mapped");
+                    }
+                    mapSize = Math.min(mapSize * 2, Integer.MAX_VALUE);
+                    continue;
+                }
+                limit = lastBreak + 1;
+            }
+
+            int lines = scan(buffer, 0, limit, consumer);
+            consumer.chunkScanned(limit, lines);
+            position += limit;
+            mapSize = chunkSize;
+        }
+    }
+
+    /**
+     * Cuts the channel in at most the given number of parts that all start at the beginning of a line.
+     * Part i is the range [boundaries[i], boundaries[i + 1]). Parts may be empty if the lines are longer
+     * than the parts.
+     */
+    public static long[] split(FileChannel channel, int parts) throws IOException {
+        long size = channel.size();
+        long[] boundaries = new long[parts + 1];
+        boundaries[parts] = size;
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (int i = 1; i < parts; i++) {
+            long position = Math.max(size / parts * i, boundaries[i - 1]);
+            // move the boundary right after the next line break
+            boundaries[i] = position == 0 ? 0 : nextLineStart(channel, position - 1, buffer);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Returns the position right after the last line break in [start, end) of the channel, or start if
+     * there is none. Everything after it is an incomplete line that may still be written.
+     */
+    public static long lastLineEnd(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = end;
+        while (position > start) {
+            int length = (int) Math.min(buffer.capacity(), position - start);
+            buffer.clear();
+            buffer.limit(length);
+            int read = 0;
+            while (read < length) {
+                int bytes = channel.read(buffer, position - length + read);
+                if (bytes < 0) {
+                    throw new IOException("The file was truncated while reading it");
+                }
+                read += bytes;
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return position - length + i + 1;
+                }
+            }
+            position -= length;
+        }
+        return start;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        long size = channel.size();
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Scans the bytes [from, to) of the buffer and returns the number of lines. The buffer must be in little
+     * endian order.
+     */
+    static int scan(ByteBuffer buffer, int from, int to, PhraseConsumer consumer) {
+        int lines = 0;
+        int phraseStart = from;
+        int i = from;
+        while (i < to) {
+            if (i + 8 <= to && !hasDelimiter(buffer.getLong(i))) {
+                // none of the 8 bytes is a delimiter, skip them all at once
+                i += 8;
+                continue;
+            }
+
+            // there is a delimiter somewhere in these bytes, find it the slow way
+            int end = Math.min(i + 8, to);
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b == '|') {
+                    consumer.accept(buffer, phraseStart, i);
+                    phraseStart = i + 1;
+                } else if (b == '\n') {
+                    consumer.accept(buffer, phraseStart, trimCarriageReturn(buffer, phraseStart, i));
+                    phraseStart = i + 1;
+                    lines++;
+                }
+            }
+        }
+
+        // the last line of the file may not end with a line break
+        if (phraseStart < to) {
+            consumer.accept(buffer, phraseStart, trimCarriageReturn(buffer, phraseStart, to));
+            lines++;
+        }
+        return lines;
+    }
+
+    // Returns true if any of the bytes of the word is a '|' or a '\n'. The classic "has zero byte" trick
+    // may report a false positive only for bytes that follow a real zero byte, so a positive answer is
+    // always correct for the word as a whole.
+    private static boolean hasDelimiter(long word) {
+        long pipes = word ^ PIPES;
+        long newlines = word ^ NEWLINES;
+        long zeros = ((pipes - LOW_BITS) & ~pipes) | ((newlines - LOW_BITS) & ~newlines);
+        return (zeros & HIGH_BITS) != 0;
+    }
+
+    // lines may be terminated by "\r\n", the '\r' is not part of the last phrase
+    private static int trimCarriageReturn(ByteBuffer buffer, int from, int to) {
+        return to > from && buffer.get(to - 1) == '\r' ? to - 1 : to;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, int limit, byte b) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,387 @@
+package gr.headstart.algorithms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.logging.Logger;
+
+/**
+ * A file with the counts of the phrases, so that counting does not have to start from scratch every time.
+ * Per hour shards can be counted once and saved as snapshots, which are then merged into daily and weekly
+ * snapshots without reading the original files again.
+ *
+ * The phrases are stored sorted by their bytes and front coded: each entry keeps only the length of the
+ * prefix it shares with the previous phrase and the rest of its bytes. Sorted phrases share long prefixes,
+ * so this saves a lot of space, much like the trie does in memory. The format is
+ *
+ *   "TPS" 1                                                       the magic and the version
+ *   (shared prefix length, suffix length, suffix bytes, count)*   one entry per phrase, numbers as varints
+ *
+ * A snapshot is read through a memory mapped window that moves along the file, so files larger than 2GB
+ * can be read too. Since the phrases are sorted, any number of snapshots can be merged by streaming them
+ * side by side: a k-way merge keeps only the current phrase of each input in memory and adds up the counts
+ * of equal phrases.
+ *
+ * A snapshot is always written to a temporary file next to it, which is moved over the snapshot only when
+ * it is complete. A crash while writing leaves the previous snapshot as it was, and an hourly snapshot can
+ * be merged into the daily one by giving the daily one both as an input and as the output.
+ */
+public final class PhraseSnapshot {
+    private final static Logger logger = Logger.getLogger(PhraseSnapshot.class.getName());
+
+    private static final byte[] MAGIC = {'T', 'P', 'S', 1};
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private PhraseSnapshot() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        // read the arguments as "merge output input1 input2 ..." or "top snapshot topPhrasesCount"
+        if (args.length >= 3 && args[0].equals("merge")) {
+            List<Path> inputs = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                inputs.add(Paths.get(args[i]));
+            }
+            merge(inputs, Paths.get(args[1]));
+        } else if (args.length == 3 && args[0].equals("top")) {
+            logger.info("Results: " + top(Paths.get(args[1]), Integer.parseInt(args[2])));
+        } else {
+            logger.warning("Usage: PhraseSnapshot merge output input1 input2 ... | PhraseSnapshot top snapshot n");
+        }
+    }
+
+    /**
+     * Writes all the phrases of the trie with their counts.
+     */
+    static void write(PhraseTrie trie, Path file) throws IOException {
+        try (Writer writer = new Writer(file)) {
+            try {
+                trie.forEachSorted((node, phrase, length, count) -> writer.writeUnchecked(phrase, length, count));
+            } catch (UncheckedIOException uioe) {
+                throw uioe.getCause();
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Adds the counts of the snapshot to the trie.
+     */
+    static void load(Path file, PhraseTrie trie) throws IOException {
+        try (Reader reader = new Reader(file)) {
+            ByteBuffer phrase = ByteBuffer.wrap(reader.phrase);
+            while (reader.next()) {
+                if (phrase.array() != reader.phrase) {
+                    phrase = ByteBuffer.wrap(reader.phrase);
+                }
+                trie.add(phrase, 0, reader.length, reader.count);
+            }
+        }
+    }
+
+    /**
+     * Merges the snapshots into a new one, adding up the counts of the phrases found in more than one. The
+     * output may be one of the inputs, it is replaced only when the merge is complete.
+     */
+    public static void merge(List<Path> inputs, Path output) throws IOException {
+        List<Reader> readers = new ArrayList<>();
+        Writer writer = null;
+        try {
+            // the inputs are opened first, so a missing input does not even create the output
+            PriorityQueue<Reader> heads = new PriorityQueue<>(Math.max(1, inputs.size()), Reader::compareTo);
+            for (Path input : inputs) {
+                Reader reader = new Reader(input);
+                readers.add(reader);
+                if (reader.next()) {
+                    heads.add(reader);
+                }
+            }
+            writer = new Writer(output);
+
+            byte[] phrase = new byte[64];
+            while (!heads.isEmpty()) {
+                // take the smallest phrase and add the counts of all the inputs that have it
+                Reader smallest = heads.poll();
+                int length = smallest.length;
+                if (length > phrase.length) {
+                    phrase = Arrays.copyOf(phrase, Math.max(length, phrase.length * 2));
+                }
+                System.arraycopy(smallest.phrase, 0, phrase, 0, length);
+                long count = smallest.count;
+                advance(smallest, heads);
+
+                while (!heads.isEmpty() && heads.peek().compareTo(phrase, length) == 0) {
+                    Reader same = heads.poll();
+                    count += same.count;
+                    advance(same, heads);
+                }
+                writer.write(phrase, length, count);
+            }
+
+            for (Reader reader : readers) {
+                reader.close();
+            }
+            writer.commit();
+        } finally {
+            for (Reader reader : readers) {
+                reader.close();
+            }
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * The top phrases of the snapshot, selected while streaming it. Only the phrases that make it to the
+     * queue become Strings.
+     */
+    public static Queue<TopPhrases.Phrase> top(Path file, int numOfTopElements) throws IOException {
+        if (numOfTopElements <= 0) {
+            logger.warning("Number of top elements must be a positive integer");
+            return null;
+        }
+
+        Queue<TopPhrases.Phrase> priorityQueue = new PriorityQueue<>();
+        try (Reader reader = new Reader(file)) {
+            while (reader.next()) {
+                if (priorityQueue.size() >= numOfTopElements) {
+                    if (priorityQueue.peek().phraseCount >= reader.count) {
+                        continue;
+                    }
+                    priorityQueue.poll();
+                }
+                priorityQueue.add(new TopPhrases.Phrase(reader.count,
+                        new String(reader.phrase, 0, reader.length, StandardCharsets.UTF_8)));
+            }
+        }
+        return priorityQueue;
+    }
+
+    private static void advance(Reader reader, PriorityQueue<Reader> heads) throws IOException {
+        if (reader.next()) {
+            heads.add(reader);
+        }
+    }
+
+    /**
+     * Writes the phrases of a snapshot, which must be given in increasing order of their bytes. They go to a
+     * temporary file in the same directory, which replaces the snapshot on {@link #commit()}. Closing the
+     * writer without committing deletes the temporary file and leaves the snapshot as it was.
+     */
+    static class Writer implements Closeable {
+        private final Path file;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private byte[] previous = new byte[64];
+        private int previousLength = -1;
+        private boolean committed;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            // in the same directory, so the move is a rename on the same file system
+            Path directory = file.toAbsolutePath().getParent();
+            temporary = Files.createTempFile(directory, file.getFileName().toString() + ".", ".tmp");
+            channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            buffer.put(MAGIC);
+        }
+
+        public void write(byte[] phrase, int length, long count) throws IOException {
+            int shared = 0;
+            int max = Math.min(length, previousLength);
+            while (shared < max && previous[shared] == phrase[shared]) {
+                shared++;
+            }
+            if (previousLength >= 0 && (shared == length
+                    || (shared < previousLength && (previous[shared] & 0xFF) > (phrase[shared] & 0xFF)))) {
+                throw new IllegalArgumentException("Phrases must be written in increasing order");
+            }
+
+            writeVarint(shared);
+            writeVarint(length - shared);
+            for (int i = shared; i < length; i++) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put(phrase[i]);
+            }
+            writeVarint(count);
+
+            if (length > previous.length) {
+                previous = Arrays.copyOf(previous, Math.max(length, previous.length * 2));
+            }
+            System.arraycopy(phrase, shared, previous, shared, length - shared);
+            previousLength = length;
+        }
+
+        void writeUnchecked(byte[] phrase, int length, long count) {
+            try {
+                write(phrase, length, count);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        private void writeVarint(long value) throws IOException {
+            if (buffer.remaining() < 10) {
+                flush();
+            }
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Writes what is left and moves the complete snapshot over the file.
+         */
+        public void commit() throws IOException {
+            flush();
+            channel.force(false);
+            channel.close();
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                try {
+                    channel.close();
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the phrases of a snapshot in order. After a successful {@link #next()} the current phrase is in
+     * phrase[0, length) and its count in count.
+     */
+    static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        byte[] phrase = new byte[64];
+        int length;
+        long count;
+
+        Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+            map(0, MAGIC.length);
+            for (byte b : MAGIC) {
+                if (window.remaining() == 0 || window.get() != b) {
+                    channel.close();
+                    throw new IOException("File " + file + " is not a phrase snapshot");
+                }
+            }
+        }
+
+        public boolean next() throws IOException {
+            if (position() >= size) {
+                return false;
+            }
+            int shared = (int) readVarint();
+            int suffix = (int) readVarint();
+            if (shared > length || shared + suffix < 0) {
+                throw new IOException("Corrupted snapshot at position " + position());
+            }
+            if (shared + suffix > phrase.length) {
+                phrase = Arrays.copyOf(phrase, Math.max(shared + suffix, phrase.length * 2));
+            }
+            ensure(suffix);
+            window.get(phrase, shared, suffix);
+            length = shared + suffix;
+            count = readVarint();
+            return true;
+        }
+
+        private long position() {
+            return windowStart + window.position();
+        }
+
+        private long readVarint() throws IOException {
+            ensure(10);
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (!window.hasRemaining()) {
+                    throw new IOException("Truncated snapshot at position " + position());
+                }
+                byte b = window.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupted snapshot at position " + position());
+        }
+
+        // makes sure that the next bytes are in the window, unless the file ends before them
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes && windowStart + window.limit() < size) {
+                map(position(), bytes);
+            }
+        }
+
+        private void map(long start, int minimum) throws IOException {
+            long length = Math.min(Math.max(WINDOW_SIZE, minimum), size - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            windowStart = start;
+        }
+
+        int compareTo(Reader other) {
+            return -other.compareTo(phrase, length);
+        }
+
+        // compares the current phrase to the given one, byte by byte as unsigned values
+        int compareTo(byte[] other, int otherLength) {
+            int max = Math.min(length, otherLength);
+            for (int i = 0; i < max; i++) {
+                int difference = (phrase[i] & 0xFF) - (other[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return length - otherLength;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
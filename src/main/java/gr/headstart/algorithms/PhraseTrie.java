@@ -0,0 +1,380 @@
+package gr.headstart.algorithms;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A trie of the UTF-8 bytes of the phrases that is kept in a few primitive arrays instead of objects.
+ * A trie made of node objects, each one with its own HashMap of boxed children, needs more than 100 bytes
+ * of heap for every node and keeps the garbage collector busy with millions of small objects. This one
+ * needs three to four times less. Here a node is just an int id and everything we know about it is
+ * stored in arrays indexed by that id: its parent, the byte that leads to it from its parent and its
+ * phrase count.
+ *
+ * The children are not kept per node. All the edges of the trie are stored in a single open addressing
+ * hash table, where the key is the pair (parent id, byte) and the value is the id of the child, all three
+ * packed in a single long so that a lookup reads one cache line and not two. Finding a child is one hash
+ * lookup, no matter how many children the node has. The parent of each node is kept so that a phrase can
+ * be rebuilt from its last node, walking up to the root. This way we never need to traverse the trie from
+ * the top and the phrases can be selected by just looping over the count array.
+ *
+ * A node costs about 25 to 30 bytes: 4 for the parent, 1 for the byte, 8 for the count and 8 for the edge
+ * table entry, plus the empty slots of the table. Ids are given in order of creation, so a parent always
+ * has a smaller id than its children. Packing the edges limits the ids to NODE_BITS bits, 268 million
+ * nodes or about 8GB of heap, which is more than the in memory mode should count anyway.
+ *
+ * Every byte of a phrase is a lookup at a random place of the edge table. While the table fits in the CPU
+ * caches this is cheap, but with millions of distinct phrases the table is hundreds of MBs and almost every
+ * lookup is a cache and TLB miss. This is why counting many small tries one after the other, like
+ * {@link TopPhrases#findExternal(String, int, long)} does with its partitions, can be faster than counting
+ * a single big one, even though it writes the phrases to disk and reads them again.
+ *
+ * The trie is not thread safe.
+ */
+final class PhraseTrie {
+
+    static final int ROOT = 0;
+    static final int NO_NODE = -1;
+
+    // the heap used by a node in the worst case, when the arrays and the edge table have just grown
+    static final int BYTES_PER_NODE = 48;
+
+    // an edge is packed in a long as (parent, byte, child), so a node id has to fit in NODE_BITS
+    private static final int NODE_BITS = 28;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+    private static final int MAX_NODES = 1 << NODE_BITS;
+    private static final int MAX_EDGE_CAPACITY = 1 << 30;
+
+    private int[] parents;
+    private byte[] labels;
+    private long[] counts;
+    private int size;
+    // the nodes with a count > 0
+    private int distinct;
+
+    // (parent << 8 | byte) << NODE_BITS | child, an empty slot is 0 since the root is nobody's child
+    private long[] edgeTable;
+    private int edges;
+    private int edgeShift;
+
+    PhraseTrie() {
+        this(1024);
+    }
+
+    PhraseTrie(int expectedNodes) {
+        int capacity = Math.max(expectedNodes, 16);
+        parents = new int[capacity];
+        labels = new byte[capacity];
+        counts = new long[capacity];
+        size = 1;
+        parents[ROOT] = NO_NODE;
+
+        int edgeCapacity = Integer.highestOneBit(capacity) << 1;
+        edgeTable = new long[edgeCapacity];
+        edgeShift = 64 - Integer.numberOfTrailingZeros(edgeCapacity);
+    }
+
+    /**
+     * Counts one more occurrence of the phrase [from, to) of the buffer. Empty phrases are ignored.
+     */
+    public void add(ByteBuffer buffer, int from, int to) {
+        add(buffer, from, to, 1);
+    }
+
+    public void add(ByteBuffer buffer, int from, int to, long count) {
+        if (to <= from) {
+            return;
+        }
+        int node = ROOT;
+        for (int i = from; i < to; i++) { // O(k)
+            node = childOrCreate(node, buffer.get(i));
+        }
+        if (counts[node] == 0 && count > 0) {
+            distinct++;
+        }
+        counts[node] += count;
+    }
+
+    /**
+     * Returns the node of the phrase [from, to) of the buffer or NO_NODE if the phrase was never added.
+     */
+    public int find(ByteBuffer buffer, int from, int to) {
+        int node = ROOT;
+        for (int i = from; i < to && node != NO_NODE; i++) {
+            node = child(node, buffer.get(i));
+        }
+        return node;
+    }
+
+    public int child(int node, byte label) {
+        long key = edgeKey(node, label);
+        int mask = edgeTable.length - 1;
+        for (int slot = slot(key); edgeTable[slot] != 0; slot = (slot + 1) & mask) {
+            long edge = edgeTable[slot];
+            if (edge >>> NODE_BITS == key) {
+                return (int) (edge & NODE_MASK);
+            }
+        }
+        return NO_NODE;
+    }
+
+    private int childOrCreate(int node, byte label) {
+        long key = edgeKey(node, label);
+        int mask = edgeTable.length - 1;
+        int slot = slot(key);
+        for (long edge; (edge = edgeTable[slot]) != 0; slot = (slot + 1) & mask) {
+            // the key and the child are in the same long, so a probe touches a single cache line
+            if (edge >>> NODE_BITS == key) {
+                return (int) (edge & NODE_MASK);
+            }
+        }
+
+        int child = newNode(node, label);
+        edgeTable[slot] = key << NODE_BITS | child;
+        // keep the table at most 3/4 full, longer probe sequences cost more than the memory we save
+        if (++edges > (edgeTable.length >>> 2) * 3) {
+            growEdges();
+        }
+        return child;
+    }
+
+    private int newNode(int parent, byte label) {
+        if (size == parents.length) {
+            if (size == MAX_NODES) {
+                throw new IllegalStateException("The trie can not hold more than " + MAX_NODES + " nodes");
+            }
+            int capacity = (int) Math.min((long) size + (size >> 1), MAX_NODES);
+            parents = Arrays.copyOf(parents, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int node = size++;
+        parents[node] = parent;
+        labels[node] = label;
+        return node;
+    }
+
+    private void growEdges() {
+        if (edgeTable.length == MAX_EDGE_CAPACITY) {
+            throw new IllegalStateException("The trie can not hold more than " + edges + " edges");
+        }
+        long[] oldTable = edgeTable;
+        edgeTable = new long[oldTable.length << 1];
+        edgeShift--;
+
+        int mask = edgeTable.length - 1;
+        for (long edge : oldTable) {
+            if (edge != 0) {
+                int slot = slot(edge >>> NODE_BITS);
+                while (edgeTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                edgeTable[slot] = edge;
+            }
+        }
+    }
+
+    private static long edgeKey(int node, byte label) {
+        return ((long) node << 8) | (label & 0xFF);
+    }
+
+    private int slot(long key) {
+        // fibonacci hashing, the high bits of the product are well mixed
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> edgeShift);
+    }
+
+    /**
+     * Adds the counts of the other trie to this one. Since a parent is always created before its children,
+     * the nodes of the other trie can be merged in order of their ids, the parent of each one has already
+     * been mapped to a node of this trie.
+     */
+    public void merge(PhraseTrie other) {
+        int[] mapped = new int[other.size];
+        mapped[ROOT] = ROOT;
+        for (int node = 1; node < other.size; node++) { // O(n)
+            int target = childOrCreate(mapped[other.parents[node]], other.labels[node]);
+            if (counts[target] == 0 && other.counts[node] > 0) {
+                distinct++;
+            }
+            counts[target] += other.counts[node];
+            mapped[node] = target;
+        }
+    }
+
+    /**
+     * Visits the phrases with a count > 0 in lexicographic order of their bytes. The edge table does not
+     * keep the children of a node together, so they are first grouped by parent and sorted by byte with
+     * two counting sorts, which costs a few int arrays of the size of the trie.
+     */
+    public void forEachSorted(PhraseVisitor visitor) {
+        // children of node n are sortedChildren[offsets[n], offsets[n + 1])
+        int[] offsets = childOffsets();
+        int[] sortedChildren = sortedChildren(offsets);
+
+        // depth first, the children of a node are pushed in reverse order so that the smallest is popped first
+        byte[] phrase = new byte[64];
+        int[] stack = new int[64];
+        int[] depths = new int[64];
+        int top = 0;
+        for (int i = offsets[ROOT + 1] - 1; i >= offsets[ROOT]; i--) {
+            stack[top] = sortedChildren[i];
+            depths[top++] = 1;
+        }
+        while (top > 0) {
+            int node = stack[--top];
+            int depth = depths[top];
+            if (depth > phrase.length) {
+                phrase = Arrays.copyOf(phrase, phrase.length * 2);
+            }
+            phrase[depth - 1] = labels[node];
+            if (counts[node] > 0) {
+                visitor.visit(node, phrase, depth, counts[node]);
+            }
+
+            int children = offsets[node + 1] - offsets[node];
+            if (top + children > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + children));
+                depths = Arrays.copyOf(depths, stack.length);
+            }
+            for (int i = offsets[node + 1] - 1; i >= offsets[node]; i--) {
+                stack[top] = sortedChildren[i];
+                depths[top++] = depth + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the offsets of the children of every node in the array of {@link #sortedChildren(int[])}, the
+     * children of node n are in [offsets[n], offsets[n + 1]).
+     */
+    int[] childOffsets() {
+        int[] offsets = new int[size + 1];
+        for (int node = 1; node < size; node++) {
+            offsets[parents[node] + 1]++;
+        }
+        for (int node = 0; node < size; node++) {
+            offsets[node + 1] += offsets[node];
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns the children of all the nodes, grouped by parent and sorted by byte within each group.
+     */
+    int[] sortedChildren(int[] offsets) {
+        // visiting the nodes by byte and placing each one after the previous children of its
+        // parent leaves the children of every node sorted
+        int[] byLabel = new int[size - 1];
+        int[] labelOffsets = new int[257];
+        for (int node = 1; node < size; node++) {
+            labelOffsets[(labels[node] & 0xFF) + 1]++;
+        }
+        for (int i = 0; i < 256; i++) {
+            labelOffsets[i + 1] += labelOffsets[i];
+        }
+        for (int node = 1; node < size; node++) {
+            byLabel[labelOffsets[labels[node] & 0xFF]++] = node;
+        }
+        int[] next = Arrays.copyOf(offsets, size);
+        int[] sortedChildren = new int[size - 1];
+        for (int node : byLabel) {
+            sortedChildren[next[parents[node]]++] = node;
+        }
+        return sortedChildren;
+    }
+
+    /**
+     * Receives the phrases of {@link #forEachSorted(PhraseVisitor)}. The phrase is in bytes [0, length)
+     * and the array is reused for the next phrase.
+     */
+    interface PhraseVisitor {
+        void visit(int node, byte[] phrase, int length, long count);
+    }
+
+    /**
+     * The number of nodes, including the root. Node ids are in [0, size()).
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of distinct phrases, the nodes with a count > 0.
+     */
+    public int distinct() {
+        return distinct;
+    }
+
+    public long count(int node) {
+        return counts[node];
+    }
+
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    public byte label(int node) {
+        return labels[node];
+    }
+
+    public int depth(int node) {
+        int depth = 0;
+        for (; node != ROOT; node = parents[node]) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Compares the phrases of two nodes by their bytes, as unsigned values, without rebuilding them.
+     * Both nodes are moved up to the same depth and then up together until they meet. If they meet right
+     * away one phrase is a prefix of the other, otherwise the bytes right below the meeting point decide.
+     */
+    public int compare(int first, int second) {
+        int firstDepth = depth(first);
+        int secondDepth = depth(second);
+        int a = first;
+        int b = second;
+        for (int depth = firstDepth; depth > secondDepth; depth--) {
+            a = parents[a];
+        }
+        for (int depth = secondDepth; depth > firstDepth; depth--) {
+            b = parents[b];
+        }
+        if (a == b) {
+            return Integer.compare(firstDepth, secondDepth);
+        }
+        while (parents[a] != parents[b]) {
+            a = parents[a];
+            b = parents[b];
+        }
+        return Integer.compare(labels[a] & 0xFF, labels[b] & 0xFF);
+    }
+
+    /**
+     * Rebuilds the phrase that ends at the node, walking up to the root.
+     */
+    public String phrase(int node) {
+        return new String(bytes(node), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The bytes of the phrase that ends at the node, for when it does not have to be decoded.
+     */
+    public byte[] bytes(int node) {
+        byte[] bytes = new byte[depth(node)];
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            bytes[i] = labels[node];
+            node = parents[node];
+        }
+        return bytes;
+    }
+
+    /**
+     * The heap used by the arrays of the trie, in bytes.
+     */
+    public long memoryUsage() {
+        return (long) parents.length * (4 + 1 + 8) + (long) edgeTable.length * 8;
+    }
+}
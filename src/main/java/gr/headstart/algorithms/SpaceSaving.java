@@ -0,0 +1,248 @@
+package gr.headstart.algorithms;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * Approximate counting of the most frequent phrases with the Space-Saving algorithm of Metwally, Agrawal
+ * and El Abbadi. Only a fixed number of counters is kept. A phrase that already has a counter increments
+ * it. A new phrase takes the counter with the minimum count, inherits that count as its error and adds
+ * one to it. So the count of a phrase is never less than its real count and never more than its real
+ * count plus its error, and the error is at most n / capacity, where n is the number of phrases seen.
+ * Every phrase that occurs more than n / capacity times is guaranteed to have a counter.
+ *
+ * The memory used depends only on the capacity and on the length of the phrases, not on how many
+ * distinct phrases there are. The counters are kept in primitive arrays: a min heap of the slots ordered
+ * by count, to find the minimum in O(1) and fix it in O(log(m)), and an open addressing hash table from
+ * the bytes of a phrase to its slot. The bytes of the phrase of each slot are copied in a byte array that
+ * is reused when the slot is taken by another phrase, so after warming up nothing is allocated per phrase.
+ *
+ * The hash table can not be larger than MAX_TABLE_SIZE, the largest power of two an array can have, and is
+ * kept at most half full, so there are at most MAX_CAPACITY counters.
+ *
+ * The class is not thread safe.
+ */
+final class SpaceSaving {
+
+    private static final int EMPTY = -1;
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+    static final int MAX_CAPACITY = MAX_TABLE_SIZE / 2;
+
+    private final int capacity;
+    private int size;
+
+    // per slot
+    private final byte[][] keys;
+    private final int[] keyLengths;
+    private final int[] hashes;
+    private final long[] counts;
+    private final long[] errors;
+    private final int[] heapPositions;
+
+    // min heap of the slots, ordered by count
+    private final int[] heap;
+
+    // hash of the phrase -> slot, linear probing
+    private final int[] table;
+    private final int tableMask;
+
+    SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be a positive integer");
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity can not be more than " + MAX_CAPACITY);
+        }
+        this.capacity = capacity;
+        keys = new byte[capacity][];
+        keyLengths = new int[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heapPositions = new int[capacity];
+        heap = new int[capacity];
+
+        int tableSize = tableSize(capacity);
+        table = new int[tableSize];
+        Arrays.fill(table, EMPTY);
+        tableMask = tableSize - 1;
+    }
+
+    /**
+     * The size of the hash table for the capacity, at most half full so that probe sequences stay short. It
+     * is computed in longs, the capacities from 2^29 would wrap around in ints.
+     */
+    static int tableSize(int capacity) {
+        return (int) Math.min(MAX_TABLE_SIZE, Long.highestOneBit(capacity) << 2);
+    }
+
+    /**
+     * Counts one more occurrence of the phrase [from, to) of the buffer. Empty phrases are ignored.
+     */
+    public void add(ByteBuffer buffer, int from, int to) {
+        if (to <= from) {
+            return;
+        }
+
+        int hash = hash(buffer, from, to);
+        int index = hash & tableMask;
+        for (int slot = table[index]; slot != EMPTY; slot = table[index]) {
+            if (hashes[slot] == hash && sameKey(slot, buffer, from, to)) {
+                // the phrase is monitored, just increment its counter
+                counts[slot]++;
+                siftDown(heapPositions[slot]);
+                return;
+            }
+            index = (index + 1) & tableMask;
+        }
+
+        int slot;
+        boolean newCounter = size < capacity;
+        if (newCounter) {
+            slot = size++;
+            heap[slot] = slot;
+            heapPositions[slot] = slot;
+            counts[slot] = 1;
+            errors[slot] = 0;
+        } else {
+            // replace the phrase with the minimum count, the new one may have occurred that many times
+            slot = heap[0];
+            removeFromTable(slot);
+            errors[slot] = counts[slot];
+            counts[slot]++;
+            // the new index may have moved if the removal shifted the probe sequence
+            index = hash & tableMask;
+            while (table[index] != EMPTY) {
+                index = (index + 1) & tableMask;
+            }
+        }
+
+        setKey(slot, buffer, from, to, hash);
+        table[index] = slot;
+        if (newCounter) {
+            // a new counter has the smallest possible count
+            siftUp(heapPositions[slot]);
+        } else {
+            siftDown(heapPositions[slot]);
+        }
+    }
+
+    /**
+     * The phrases with the highest counts, as a queue with the minimum count at the head like the
+     * one returned by {@link TopPhrases#find(String, int)}. Each phrase carries its maximum error.
+     */
+    public Queue<TopPhrases.Phrase> top(int numOfTopElements) {
+        Queue<TopPhrases.Phrase> priorityQueue = new PriorityQueue<>();
+        for (int slot = 0; slot < size; slot++) {
+            if (priorityQueue.size() >= numOfTopElements) {
+                if (priorityQueue.peek().phraseCount >= counts[slot]) {
+                    continue;
+                }
+                priorityQueue.poll();
+            }
+            priorityQueue.add(new TopPhrases.Phrase(counts[slot],
+                    new String(keys[slot], 0, keyLengths[slot], StandardCharsets.UTF_8), errors[slot]));
+        }
+        return priorityQueue;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void setKey(int slot, ByteBuffer buffer, int from, int to, int hash) {
+        int length = to - from;
+        if (keys[slot] == null || keys[slot].length < length) {
+            keys[slot] = new byte[Math.max(length, 16)];
+        }
+        byte[] key = keys[slot];
+        for (int i = 0; i < length; i++) {
+            key[i] = buffer.get(from + i);
+        }
+        keyLengths[slot] = length;
+        hashes[slot] = hash;
+    }
+
+    private boolean sameKey(int slot, ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (keyLengths[slot] != length) {
+            return false;
+        }
+        byte[] key = keys[slot];
+        for (int i = 0; i < length; i++) {
+            if (key[i] != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Linear probing can not just empty a slot, the entries after it in the same probe sequence would be
+    // lost. Shift back every following entry that would be reachable from the emptied slot.
+    private void removeFromTable(int slot) {
+        int index = hashes[slot] & tableMask;
+        while (table[index] != slot) {
+            index = (index + 1) & tableMask;
+        }
+
+        int empty = index;
+        for (index = (index + 1) & tableMask; table[index] != EMPTY; index = (index + 1) & tableMask) {
+            int home = hashes[table[index]] & tableMask;
+            // move the entry if its home is not in the cyclic range (empty, index]
+            boolean reachable = empty <= index ? (home > empty && home <= index) : (home > empty || home <= index);
+            if (!reachable) {
+                table[empty] = table[index];
+                empty = index;
+            }
+        }
+        table[empty] = EMPTY;
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        long count = counts[slot];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= count) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapPositions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        long count = counts[slot];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= count) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPositions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+
+    private static int hash(ByteBuffer buffer, int from, int to) {
+        // FNV-1a, mixed since only the low bits are used for the table index
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
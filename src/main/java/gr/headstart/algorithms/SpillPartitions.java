@@ -0,0 +1,144 @@
+package gr.headstart.algorithms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temporary partition files for the algorithms that spill to disk what does not fit in the heap, like
+ * {@link PhrasePartitions} and {@link ComplementaryPairsFile}. The caller decides which partition every
+ * record goes to and how it is encoded, this class only keeps a buffer per partition and writes it to its
+ * file when it is full, so the memory used while partitioning is the number of partitions times the buffer
+ * size.
+ *
+ * Every partition keeps a file open until it is flushed, and the usual limit of open files of a process is
+ * 1024, so there are never more than MAX_FAN_OUT partitions at once. A caller that needs more has to split
+ * the partitions that are too big again, with a different hash.
+ *
+ * The files are created in a temporary directory of their own which is deleted, along with any file left
+ * in it, when the partitions are closed. Close them in a finally block or a try-with-resources statement
+ * and nothing is left behind, whether the run succeeds or not.
+ */
+final class SpillPartitions implements Closeable {
+
+    // the partitions of a single pass, far below the usual limit of 1024 open files
+    static final int MAX_FAN_OUT = 256;
+
+    private final Path directory;
+    private final Path[] files;
+    private final FileChannel[] channels;
+    private final ByteBuffer[] buffers;
+
+    /**
+     * @param prefix the name of the temporary directory starts with it
+     * @param order  the byte order of the buffers
+     */
+    SpillPartitions(Path parent, String prefix, int partitions, int bufferSize, ByteOrder order) throws IOException {
+        if (partitions > MAX_FAN_OUT) {
+            throw new IllegalArgumentException("At most " + MAX_FAN_OUT + " partitions can be open at once");
+        }
+        directory = Files.createTempDirectory(parent, prefix);
+        files = new Path[partitions];
+        channels = new FileChannel[partitions];
+        buffers = new ByteBuffer[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                files[i] = directory.resolve("partition-" + i);
+                channels[i] = FileChannel.open(files[i], StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                buffers[i] = ByteBuffer.allocate(bufferSize).order(order);
+            }
+        } catch (IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * The buffer of the partition with at least the given number of bytes remaining, the bytes put in it end
+     * up in the file of the partition. A full buffer is written to the file first, so the bytes can not be
+     * more than the buffer size.
+     */
+    ByteBuffer buffer(int partition, int bytes) throws IOException {
+        ByteBuffer out = buffers[partition];
+        if (out.remaining() < bytes) {
+            write(partition);
+        }
+        return out;
+    }
+
+    /**
+     * Writes what is left in the buffers and closes the files for writing. Nothing can be added afterwards,
+     * and the buffers are let go, so partitions that are kept around to be read later do not hold them.
+     */
+    void flush() throws IOException {
+        for (int i = 0; i < files.length; i++) {
+            write(i);
+            channels[i].close();
+            buffers[i] = null;
+        }
+    }
+
+    int size() {
+        return files.length;
+    }
+
+    Path file(int partition) {
+        return files[partition];
+    }
+
+    /**
+     * The size of the largest partition file, after they are flushed.
+     */
+    long largest() throws IOException {
+        long largest = 0;
+        for (Path file : files) {
+            largest = Math.max(largest, Files.size(file));
+        }
+        return largest;
+    }
+
+    /**
+     * Deletes a partition that is not needed anymore, to give back the disk space as soon as possible.
+     */
+    void delete(int partition) throws IOException {
+        Files.deleteIfExists(files[partition]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (int i = 0; i < files.length; i++) {
+            try {
+                if (channels[i] != null) {
+                    channels[i].close();
+                }
+                if (files[i] != null) {
+                    Files.deleteIfExists(files[i]);
+                }
+            } catch (IOException ioe) {
+                // keep deleting the rest, report the first failure at the end
+                if (failure == null) {
+                    failure = ioe;
+                }
+            }
+        }
+        Files.deleteIfExists(directory);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void write(int partition) throws IOException {
+        ByteBuffer out = buffers[partition];
+        out.flip();
+        while (out.hasRemaining()) {
+            channels[partition].write(out);
+        }
+        out.clear();
+    }
+}
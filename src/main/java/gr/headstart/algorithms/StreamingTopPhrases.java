@@ -0,0 +1,118 @@
+package gr.headstart.algorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.logging.Logger;
+
+/**
+ * A counter of phrases that lives as long as we want and keeps counting as new data arrive. A log file
+ * that grows all day should not be read from the beginning every time we want to know its top phrases.
+ * Instead, the counter keeps its trie between calls and only the new lines are added to it, either
+ * given directly or by tailing the file from the offset where the previous call stopped. The top phrases
+ * can be asked at any time and asking does not change the counts, so they can be asked again later.
+ *
+ * Only complete lines are counted when tailing a file. The bytes after the last line break are left for
+ * the next call, since the writer may not have finished the line yet.
+ *
+ * The counts can be saved to a {@link PhraseSnapshot} and loaded back, so a counter can pick up where a
+ * previous one stopped.
+ *
+ * All the methods are synchronized, so lines may be added from one thread while another one asks for
+ * the top phrases.
+ */
+public class StreamingTopPhrases {
+    private final static Logger logger = Logger.getLogger(StreamingTopPhrases.class.getName());
+
+    private final PhraseNormalizer normalizer;
+    private final PhraseTrie trie = new PhraseTrie();
+    // the methods are synchronized, so a single stage is enough
+    private final PhraseScanner.PhraseConsumer counter;
+
+    public StreamingTopPhrases() {
+        this(PhraseNormalizer.DEFAULT);
+    }
+
+    /**
+     * @param normalizer applied to every phrase before it is counted
+     */
+    public StreamingTopPhrases(PhraseNormalizer normalizer) {
+        this.normalizer = normalizer;
+        counter = normalizer.wrap(trie::add);
+    }
+
+    /**
+     * Counts the phrases of a single line.
+     */
+    public synchronized void addLine(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        addLines(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Counts the phrases of the lines in the UTF-8 encoded bytes [from, to).
+     */
+    public synchronized void addLines(byte[] bytes, int from, int to) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        PhraseScanner.scan(buffer, from, to, counter);
+    }
+
+    /**
+     * Counts the complete lines that were appended to the file after the given offset and returns the
+     * offset to continue from the next time. If the file is smaller than the offset it is assumed that
+     * it was truncated or rotated and it is read from the beginning.
+     */
+    public synchronized long tail(Path file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                logger.warning("File " + file + " is smaller than offset " + offset + ", reading it from the start");
+                offset = 0;
+            }
+
+            long end = PhraseScanner.lastLineEnd(channel, offset, size);
+            PhraseScanner.scan(channel, offset, end, PhraseScanner.DEFAULT_CHUNK_SIZE, counter);
+            return end;
+        }
+    }
+
+    /**
+     * Adds the counts of a snapshot written by {@link #save(Path)}, or by another counter, to this one.
+     */
+    public synchronized void load(Path snapshot) throws IOException {
+        PhraseSnapshot.load(snapshot, trie);
+    }
+
+    /**
+     * Writes the current counts to a snapshot, so that a later run can continue from them.
+     */
+    public synchronized void save(Path snapshot) throws IOException {
+        PhraseSnapshot.write(trie, snapshot);
+    }
+
+    /**
+     * The current top phrases, with the minimum count at the head of the queue like the one returned by
+     * {@link TopPhrases#find(String, int)}. The counts are not affected.
+     */
+    public synchronized Queue<TopPhrases.Phrase> top(int numOfTopElements) {
+        if (numOfTopElements <= 0) {
+            logger.warning("Number of top elements must be a positive integer");
+            return null;
+        }
+
+        return TopKSelector.select(trie, numOfTopElements).toQueue();
+    }
+
+    /**
+     * A {@link PhraseIndex} of the current counts. The index is a copy, so it can be queried by many threads
+     * while this counter goes on counting, and replaced by a newer one from time to time.
+     */
+    public synchronized PhraseIndex index() {
+        return new PhraseIndex(trie, normalizer);
+    }
+}
@@ -0,0 +1,215 @@
+package gr.headstart.algorithms;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Keeps the K nodes of a {@link PhraseTrie} with the highest counts. Putting every candidate phrase in a
+ * PriorityQueue of Phrase objects means building a String and an object for each one of them, even for
+ * those that are thrown away right after. Here the candidates are only a node id and a count, kept in two
+ * parallel arrays that form a min heap of at most K entries, so nothing is allocated while selecting and
+ * the strings are rebuilt only for the final winners.
+ *
+ * The root of the heap is the worst of the selected nodes. A candidate replaces it only if it is better,
+ * so the heap never grows past K. A node is better than another one if its count is higher or, for equal
+ * counts, if its phrase is smaller by its bytes. Ties are always broken the same way, so the selected
+ * phrases do not depend on the order the nodes are visited.
+ *
+ * Selectors of the same trie can be merged, so the nodes can be split in ranges that are selected in
+ * parallel and merged at the end.
+ */
+final class TopKSelector {
+
+    // ranges smaller than this are not worth splitting between workers
+    private static final int MIN_PARALLEL_RANGE = 1 << 16;
+
+    private final PhraseTrie trie;
+    private final int capacity;
+    private final int[] nodes;
+    private final long[] counts;
+    private int size;
+
+    TopKSelector(PhraseTrie trie, int capacity) {
+        this.trie = trie;
+        this.capacity = capacity;
+        // the heap never holds more nodes than the trie has
+        int length = Math.min(capacity, trie.size());
+        nodes = new int[length];
+        counts = new long[length];
+    }
+
+    /**
+     * Selects the top nodes of the whole trie.
+     */
+    static TopKSelector select(PhraseTrie trie, int capacity) {
+        TopKSelector selector = new TopKSelector(trie, capacity);
+        selector.offerRange(1, trie.size());
+        return selector;
+    }
+
+    /**
+     * Selects the top nodes of the whole trie, splitting the nodes between the workers of the pool.
+     */
+    static TopKSelector select(PhraseTrie trie, int capacity, ForkJoinPool pool) {
+        return pool.invoke(new SelectTask(trie, capacity, 1, trie.size()));
+    }
+
+    /**
+     * Offers all the nodes with a count > 0 in [fromNode, toNode).
+     */
+    public void offerRange(int fromNode, int toNode) {
+        for (int node = fromNode; node < toNode; node++) { // O(n)
+            long count = trie.count(node);
+            if (count > 0) {
+                offer(node, count);
+            }
+        }
+    }
+
+    public void offer(int node, long count) {
+        if (size < capacity) {
+            nodes[size] = node;
+            counts[size] = count;
+            siftUp(size++);
+        } else if (capacity > 0 && isBetter(node, count, nodes[0], counts[0])) {
+            // replace the worst selected node, the heap stays at K nodes
+            nodes[0] = node;
+            counts[0] = count;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Adds the nodes selected by another selector of the same trie.
+     */
+    public void merge(TopKSelector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.nodes[i], other.counts[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The selected nodes, in no particular order, are node(0) ... node(size() - 1).
+     */
+    public int node(int i) {
+        return nodes[i];
+    }
+
+    public long count(int i) {
+        return counts[i];
+    }
+
+    /**
+     * Rebuilds the phrases of the selected nodes, with the worst at the head of the queue.
+     */
+    public Queue<TopPhrases.Phrase> toQueue() {
+        Queue<TopPhrases.Phrase> priorityQueue = new PriorityQueue<>(Math.max(1, size));
+        addTo(priorityQueue, capacity);
+        return priorityQueue;
+    }
+
+    /**
+     * Adds the phrases of the selected nodes to a queue that keeps at most numOfTopElements phrases, like
+     * the ones of the partitions of a file which are selected one after the other.
+     */
+    public void addTo(Queue<TopPhrases.Phrase> priorityQueue, int numOfTopElements) {
+        for (int i = 0; i < size; i++) {
+            if (priorityQueue.size() >= numOfTopElements) {
+                TopPhrases.Phrase worst = priorityQueue.peek();
+                if (worst.phraseCount > counts[i]) {
+                    continue;
+                }
+                // rebuild the phrase only if the count is high enough to compete
+                TopPhrases.Phrase phrase = new TopPhrases.Phrase(counts[i], trie.phrase(nodes[i]));
+                if (phrase.compareTo(worst) > 0) {
+                    priorityQueue.poll();
+                    priorityQueue.add(phrase);
+                }
+            } else {
+                priorityQueue.add(new TopPhrases.Phrase(counts[i], trie.phrase(nodes[i])));
+            }
+        }
+    }
+
+    private boolean isBetter(int node, long count, int otherNode, long otherCount) {
+        if (count != otherCount) {
+            return count > otherCount;
+        }
+        return trie.compare(node, otherNode) < 0;
+    }
+
+    private void siftUp(int position) {
+        int node = nodes[position];
+        long count = counts[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!isBetter(nodes[parent], counts[parent], node, count)) {
+                break;
+            }
+            nodes[position] = nodes[parent];
+            counts[position] = counts[parent];
+            position = parent;
+        }
+        nodes[position] = node;
+        counts[position] = count;
+    }
+
+    private void siftDown(int position) {
+        int node = nodes[position];
+        long count = counts[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && isBetter(nodes[child], counts[child], nodes[child + 1], counts[child + 1])) {
+                child++;
+            }
+            if (!isBetter(node, count, nodes[child], counts[child])) {
+                break;
+            }
+            nodes[position] = nodes[child];
+            counts[position] = counts[child];
+            position = child;
+        }
+        nodes[position] = node;
+        counts[position] = count;
+    }
+
+    /**
+     * Selects the nodes [fromNode, toNode), splitting the range in two halves while it is big enough.
+     */
+    static class SelectTask extends RecursiveTask<TopKSelector> {
+        final PhraseTrie trie;
+        final int capacity;
+        final int fromNode;
+        final int toNode;
+
+        SelectTask(PhraseTrie trie, int capacity, int fromNode, int toNode) {
+            this.trie = trie;
+            this.capacity = capacity;
+            this.fromNode = fromNode;
+            this.toNode = toNode;
+        }
+
+        @Override
+        protected TopKSelector compute() {
+            if (toNode - fromNode <= Math.max(MIN_PARALLEL_RANGE, capacity)) {
+                TopKSelector selector = new TopKSelector(trie, capacity);
+                selector.offerRange(fromNode, toNode);
+                return selector;
+            }
+
+            int middle = (fromNode + toNode) >>> 1;
+            SelectTask left = new SelectTask(trie, capacity, fromNode, middle);
+            left.fork();
+            TopKSelector selector = new SelectTask(trie, capacity, middle, toNode).compute();
+            selector.merge(left.join());
+            return selector;
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package gr.headstart.algorithms;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.StandardOpenOption;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
 
 /**
  * I think the most important challenge of this exercise is to find a way to use the minimum amount
@@ -26,31 +28,99 @@ import java.util.stream.Stream;
  * each node do not hold the key for finding it but the key is created by combining element's parent
  * nodes values(https://en.wikipedia.org/wiki/Trie). It is usually used for keeping strings and you
  * actually save the space used for strings with equal prefixes. The phrases are inserted into the
- * tree using recursion so as every phrase is a branch consisting of nodes and each subsequent node
+ * tree so as every phrase is a branch consisting of nodes and each subsequent node
  * represents the next character of the phrase. The leaf node of the branch holds a counter that is
  * incrementing every time a phrase is fully inserted.
  *
- * After inserting all the phrases I recursively traverse the tree nodes and every time I found a counter > 0,
+ * After inserting all the phrases I go through the tree nodes and every time I found a counter > 0,
  * I insert the phrase-counter pair in a priority queue where the maximum length is the number of
  * requested top phrases. I used the priority queue because it gives you direct access to the minimum
  * element(in our case the pair with the minimum counter) in only O(log(n)) and you can instantly
  * remove it. So I end up having a priority queue with the top n elements :-)
  *
- * The insertion of an element is a series of gets from Hashmaps and since the keys are chars each get
- * has O(1) complexity so the total complexity for each phrase is O(k) where k is the number of
- * characters. If we consider that the mean all lengths of the phrases is a constant factor then the
- * complexity for all the insertions is O(n). Traversing the tree is also O(n) for the same reasons.
+ * The nodes of the trie used to be objects with a HashMap of children each, which costs more than 100
+ * bytes per node and makes the garbage collector work hard. The trie is now a {@link PhraseTrie}, which
+ * keeps the nodes in primitive arrays and all the edges in a single hash table, for about 30 bytes per
+ * node, three to four times less. The insertion of an element is a series of lookups in that table and
+ * each one has O(1) complexity so the total complexity for each phrase is O(k) where k is the number of
+ * bytes. If we consider the mean length of the phrases a constant factor then the complexity for all the
+ * insertions is O(n). Every node knows its parent, so instead of traversing the tree I loop over the
+ * nodes and rebuild only the phrases that make it to the queue, which is also O(n).
+ *
+ * O(1) lookups are not free though. With millions of distinct phrases the edge table is much bigger than
+ * the CPU caches and almost every byte of a phrase costs a cache miss, so for such files the external mode
+ * below, whose partitions have small tries, can be faster than the in memory one.
+ * The candidates are kept by a {@link TopKSelector} as node ids and counts in primitive arrays, so the
+ * Strings and the Phrase objects are created only for the final winners. Equal counts are resolved by
+ * the phrase itself, so the same file always gives the same phrases.
  * Putting an element in the priority queue, as stated in the documentation, costs O(log(n)). So,
  * considering all the above, I would say that the time complexity of the algorith is O(n).
  *
+ * The file is not read as text. Decoding every byte to a char and splitting every line with a regex
+ * costs much more than the counting itself, so the file is memory mapped and split on the raw '|' and
+ * '\n' bytes by the {@link PhraseScanner}. The trie is built from the UTF-8 bytes of the phrases and
+ * a phrase becomes a String only when it makes it to the priority queue.
+ *
+ * The phrases are trimmed before they are counted, since the pipes are usually surrounded by spaces and
+ * "PGA " and " PGA " should not be different phrases. Other normalizations, like case folding, can be
+ * chosen with a {@link PhraseNormalizer}.
+ *
+ * Counting a big file on a single core takes long, so there is also a parallel mode. The file is cut
+ * into ranges that start and end on line breaks and each worker of a fork-join pool counts the ranges
+ * it takes into a trie of its own. No locking is needed while counting, the tries are merged in pairs
+ * at the end and the top phrases are selected from the result as before.
+ *
+ * Even a compact trie does not fit in memory if there are enough distinct phrases. For this case there is
+ * an external mode that splits the phrases by their hash in partition files on disk and then counts one
+ * partition at a time. The number of partitions is chosen so that the trie of a partition fits in the
+ * given memory budget. Each phrase lives in a single partition so the results are still exact.
+ *
+ * When exact counts are not needed there is also an approximate mode, which finds the top phrases in one
+ * pass using a fixed number of Space-Saving counters. Each phrase it returns comes with a bound of its error.
+ *
+ * A run over a big file takes a while, so it can report its progress through {@link TopPhrasesMetrics}:
+ * the bytes, lines and phrases read so far, the size of the trie and the time of each phase.
+ *
+ * The counts can also be kept after a run, in a {@link PhraseIndex} built from the trie, which answers top
+ * phrases by prefix and count queries without counting the file again.
+ *
  * @Author KouziaMi
  * @Date 6/1/2017.
  */
 public class TopPhrases {
     private final static Logger logger = Logger.getLogger(TopPhrases.class.getName());
 
-    Trie trie = new Trie();
-    Queue<Phrase> priorityQueue = new PriorityQueue<>();
+    // every worker claims ranges of the file until there are none left, so a worker that is slowed
+    // down by a range full of new phrases does not delay the rest
+    private static final int RANGES_PER_WORKER = 8;
+
+    // limits of the external mode, a partition that is too big is split again at most this many times
+    private static final int MAX_PARTITION_LEVELS = 4;
+    private static final int MIN_PARTITION_BUFFER = 4 * 1024;
+    private static final int MAX_PARTITION_BUFFER = 1024 * 1024;
+
+    private final PhraseNormalizer normalizer;
+    private final TopPhrasesMetrics metrics;
+
+    public TopPhrases() {
+        this(PhraseNormalizer.DEFAULT);
+    }
+
+    /**
+     * @param normalizer applied to every phrase before it is counted
+     */
+    public TopPhrases(PhraseNormalizer normalizer) {
+        this(normalizer, TopPhrasesMetrics.NONE);
+    }
+
+    /**
+     * @param normalizer applied to every phrase before it is counted
+     * @param metrics    updated while the runs of this instance are in progress
+     */
+    public TopPhrases(PhraseNormalizer normalizer, TopPhrasesMetrics metrics) {
+        this.normalizer = normalizer;
+        this.metrics = metrics;
+    }
 
     public static void main(String[] args) {
         // read the input as "filename topPhrasesCount"
@@ -66,137 +136,379 @@ public class TopPhrases {
 
     public Queue<Phrase> find(String filePath, int numOfTopElements) {
         Path file = Paths.get(filePath);
+        if (!isValid(file, numOfTopElements)) {
+            return null;
+        }
 
-        //handle invalid inputs
-        if (file == null || !file.toFile().exists()){
-            logger.warning("File " + filePath + " is not valid.");
+        Queue<Phrase> priorityQueue = new PriorityQueue<>();
+        metrics.start();
+        try {
+            // map the file and split it on the raw bytes, no String is created for the phrases
+            metrics.phase(TopPhrasesMetrics.Phase.SCAN);
+            PhraseTrie trie = new PhraseTrie();
+            PhraseScanner.scan(file, metrics.wrap(normalizer.wrap(trie::add), trie));
+            metrics.counted(trie);
+
+            // loop over all the trie nodes and keep the ids of the numOfTopElements nodes with the
+            // highest counts, then rebuild the phrases of these nodes only
+            metrics.phase(TopPhrasesMetrics.Phase.SELECT);
+            findTopElements(trie, priorityQueue, numOfTopElements);
+
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        } finally {
+            metrics.finish();
+        }
+
+        return priorityQueue;
+    }
+
+    public Queue<Phrase> findParallel(String filePath, int numOfTopElements) {
+        return findParallel(filePath, numOfTopElements, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #find(String, int)} but the file is counted by all the workers of the pool. The file
+     * is cut into line aligned byte ranges and every worker counts the ranges it claims into its own trie,
+     * so the workers never share anything while counting. The tries of the workers are then merged in
+     * pairs, also in parallel, and the top phrases are selected from the merged one.
+     */
+    public Queue<Phrase> findParallel(String filePath, int numOfTopElements, ForkJoinPool pool) {
+        Path file = Paths.get(filePath);
+        if (!isValid(file, numOfTopElements)) {
             return null;
         }
 
-        if (numOfTopElements <= 0){
-            logger.warning("Number of top elements must be a positive integer");
+        Queue<Phrase> priorityQueue = new PriorityQueue<>();
+        metrics.start();
+        try {
+            PhraseTrie trie = countParallel(file, pool);
+            // the selection is split between the workers as well
+            metrics.phase(TopPhrasesMetrics.Phase.SELECT);
+            TopKSelector.select(trie, numOfTopElements, pool).addTo(priorityQueue, numOfTopElements);
+
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        } catch (UncheckedIOException uioe) {
+            uioe.getCause().printStackTrace();
+        } finally {
+            metrics.finish();
+        }
+
+        return priorityQueue;
+    }
+
+    public PhraseIndex index(String filePath) {
+        return index(filePath, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Counts the file like {@link #findParallel(String, int, ForkJoinPool)} but instead of selecting the top
+     * phrases once, keeps the counts in a {@link PhraseIndex} that can answer any number of top K by prefix
+     * and count queries afterwards. Returns null if the file can not be read.
+     */
+    public PhraseIndex index(String filePath, ForkJoinPool pool) {
+        Path file = Paths.get(filePath);
+        if (!isValid(file, 1)) {
             return null;
         }
 
+        metrics.start();
         try {
-            // read the file using Streams api, more efficient than the "Scanner" approach
-            // but requires Java 8
-            Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8);
-            for (String line : (Iterable<String>) lines::iterator) {
-                String[] phrases = line.split("\\|");
-                for (String phrase : phrases) {
-                    // Insert each parsed phrase in the tree
-                    trie.insertToTrie(phrase);
-                }
-            }
+            return new PhraseIndex(countParallel(file, pool), normalizer);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        } catch (UncheckedIOException uioe) {
+            uioe.getCause().printStackTrace();
+        } finally {
+            metrics.finish();
+        }
 
-            // traverse all the trie nodes and reconstruct the phrases using a StringBuilder
-            // add the phrases to the priority queue, removing the smallest phrase count element
-            // if the one added has a higher phrase count. Do not allow more than 10000 elements
-            // to be inserted
-            trie.findTopElements(numOfTopElements);
+        return null;
+    }
 
+    /**
+     * Counts the file with all the workers of the pool and returns the merged trie.
+     */
+    private PhraseTrie countParallel(Path file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            metrics.phase(TopPhrasesMetrics.Phase.SCAN);
+            int workers = pool.getParallelism();
+            long[] ranges = PhraseScanner.split(channel, workers * RANGES_PER_WORKER);
+
+            PhraseTrie trie = pool.invoke(new CountTask(channel, ranges, new AtomicInteger(), normalizer, metrics,
+                    0, workers));
+            metrics.counted(trie);
+            return trie;
+        }
+    }
+
+    public Queue<Phrase> findExternal(String filePath, int numOfTopElements, long memoryBudget) {
+        return findExternal(filePath, numOfTopElements, memoryBudget, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Same as {@link #find(String, int)} but the counting uses about memoryBudget bytes of heap, no matter
+     * how many distinct phrases the file has. The phrases are first split by their hash into partition files
+     * in the temporary directory and then each partition is counted in memory on its own. All the occurrences
+     * of a phrase are in the same partition, so the counts and the results are exactly the same as the ones
+     * of the in memory mode. The partitions are deleted when the method returns, even if it fails.
+     */
+    public Queue<Phrase> findExternal(String filePath, int numOfTopElements, long memoryBudget, Path tempDirectory) {
+        Path file = Paths.get(filePath);
+        if (!isValid(file, numOfTopElements)) {
+            return null;
+        }
+
+        if (memoryBudget <= 0) {
+            logger.warning("Memory budget must be a positive number of bytes");
+            return null;
+        }
+
+        Queue<Phrase> priorityQueue = new PriorityQueue<>();
+        metrics.start();
+        try {
+            long fileSize = Files.size(file);
+            try (PhrasePartitions runs = partitions(tempDirectory, fileSize, memoryBudget, 0)) {
+                // the phrases are normalized before partitioning, so the partitions are counted as they are
+                metrics.phase(TopPhrasesMetrics.Phase.SCAN);
+                PhraseScanner.scan(file, metrics.wrap(normalizer.wrap(runs::add), null));
+                runs.flush();
+                countPartitions(runs, numOfTopElements, memoryBudget, tempDirectory, priorityQueue, true);
+            }
         } catch (IOException ioe) {
             ioe.printStackTrace();
+        } catch (UncheckedIOException uioe) {
+            uioe.getCause().printStackTrace();
+        } finally {
+            metrics.finish();
         }
 
         return priorityQueue;
     }
 
-    class Trie {
-        Map<Character, TrieElement> children = new HashMap<>();
-        StringBuilder wordBuilder = new StringBuilder();
+    /**
+     * Creates the partitions for size bytes of phrases. In the worst case every byte of a partition is a new
+     * trie node, so there are enough partitions for the trie of any of them to fit in the budget, but not
+     * more than can be open at once.
+     */
+    private static PhrasePartitions partitions(Path tempDirectory, long size, long memoryBudget, int level)
+            throws IOException {
+        int partitions = (int) Math.min(SpillPartitions.MAX_FAN_OUT,
+                Math.max(1, (size * PhraseTrie.BYTES_PER_NODE + memoryBudget - 1) / memoryBudget));
+        // leave most of the budget to the trie of the first partition, the buffers are freed after writing
+        int bufferSize = (int) Math.max(MIN_PARTITION_BUFFER,
+                Math.min(MAX_PARTITION_BUFFER, memoryBudget / 4 / partitions));
+        return new PhrasePartitions(tempDirectory, partitions, bufferSize, level);
+    }
 
-        public void insertToTrie(String phrase) {
-            if (phrase != null && phrase.length() > 0) {
-                // find or create the appropriate element for the first char
-                char first = phrase.charAt(0);
-                if (!trie.children.containsKey(first)) {
-                    trie.children.put(first, new TrieElement(first));
+    /**
+     * Counts the partitions one after the other and adds their top phrases to the queue. A partition that is
+     * still too big for the budget, because the input needed more partitions than can be open at once, is
+     * split again with the next level. If splitting did not make any partition smaller, the partition is
+     * mostly the same phrase, its trie is small and it is counted as it is. Only a partition that is still
+     * too big after MAX_PARTITION_LEVELS splits may go over the budget.
+     */
+    private void countPartitions(PhrasePartitions runs, int numOfTopElements, long memoryBudget, Path tempDirectory,
+                                 Queue<Phrase> priorityQueue, boolean maySplit) throws IOException {
+        for (int i = 0; i < runs.size(); i++) {
+            long size = Files.size(runs.file(i));
+            boolean tooBig = size * PhraseTrie.BYTES_PER_NODE > memoryBudget;
+            if (tooBig && maySplit && runs.level() + 1 < MAX_PARTITION_LEVELS) {
+                metrics.phase(TopPhrasesMetrics.Phase.SCAN);
+                try (PhrasePartitions split = partitions(tempDirectory, size, memoryBudget, runs.level() + 1)) {
+                    PhraseScanner.scan(runs.file(i), split::add);
+                    split.flush();
+                    runs.delete(i);
+                    countPartitions(split, numOfTopElements, memoryBudget, tempDirectory, priorityQueue,
+                            split.largest() < size);
                 }
+                continue;
+            }
 
-                TrieElement child = trie.children.get(first);
-                // invoke the actual recursive function
-                child.insert(phrase, 1);
+            if (tooBig && maySplit) {
+                logger.warning("Partition " + runs.file(i) + " of " + size
+                        + " bytes may not fit in the memory budget of " + memoryBudget + " bytes");
             }
+            // a phrase is in a single partition, so the top elements of each partition
+            // can go straight to the global queue
+            metrics.phase(TopPhrasesMetrics.Phase.COUNT);
+            PhraseTrie trie = new PhraseTrie();
+            PhraseScanner.scan(runs.file(i), trie::add);
+            metrics.counted(trie);
+            metrics.phase(TopPhrasesMetrics.Phase.SELECT);
+            findTopElements(trie, priorityQueue, numOfTopElements);
+            runs.delete(i);
         }
+    }
 
-        public void findTopElements(int numOfTopElements) {
-            for (TrieElement element : children.values()) {
-                // invoke the "traverse and add" recursive function
-                element.addToQueue(wordBuilder, numOfTopElements);
-            }
+    /**
+     * Finds the top phrases in one pass with a fixed amount of memory, but the counts are approximate.
+     * The phrases are counted with the {@link SpaceSaving} algorithm using max(numOfTopElements, 1 / epsilon)
+     * counters, so the memory depends only on these two parameters. The count of a phrase may be higher
+     * than the real one by at most epsilon * (number of phrases in the file), the exact error bound of each
+     * phrase is returned with it.
+     */
+    public Queue<Phrase> findApproximate(String filePath, int numOfTopElements, double epsilon) {
+        Path file = Paths.get(filePath);
+        if (!isValid(file, numOfTopElements)) {
+            return null;
+        }
+
+        if (!(epsilon > 0 && epsilon < 1)) {
+            logger.warning("Epsilon must be in (0, 1)");
+            return null;
+        }
+
+        long counters = Math.max(numOfTopElements, (long) Math.ceil(1 / epsilon));
+        if (counters > SpaceSaving.MAX_CAPACITY) {
+            logger.warning("Epsilon " + epsilon + " needs too many counters");
+            return null;
+        }
+
+        SpaceSaving spaceSaving = new SpaceSaving((int) counters);
+        metrics.start();
+        try {
+            metrics.phase(TopPhrasesMetrics.Phase.SCAN);
+            PhraseScanner.scan(file, metrics.wrap(normalizer.wrap(spaceSaving::add), null));
+            metrics.phase(TopPhrasesMetrics.Phase.SELECT);
+            return spaceSaving.top(numOfTopElements);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            return spaceSaving.top(numOfTopElements);
+        } finally {
+            metrics.finish();
         }
     }
 
-    class TrieElement {
-        char character;
-        long phraseCount = 0;
-        Map<Character, TrieElement> children = new HashMap<>();
+    /**
+     * Adds the top phrases of the trie to a queue that keeps at most numOfTopElements phrases. The nodes
+     * are selected by a {@link TopKSelector}, so only the phrases of the winners are rebuilt.
+     */
+    static void findTopElements(PhraseTrie trie, Queue<Phrase> priorityQueue, int numOfTopElements) {
+        TopKSelector.select(trie, numOfTopElements).addTo(priorityQueue, numOfTopElements);
+    }
 
-        public TrieElement(char character) {
-            this.character = character;
+    private boolean isValid(Path file, int numOfTopElements) {
+        //handle invalid inputs
+        if (file == null || !file.toFile().exists()){
+            logger.warning("File " + file + " is not valid.");
+            return false;
         }
 
-        public void insert(String phrase, int i) {
-            if (phrase.length() >= i + 1) {
-                // if there are more chars in the phrase invoke the recursive
-                // function of the correct child
-                char c = phrase.charAt(i);
-                if (!children.containsKey(c)) {
-                    children.put(c, new TrieElement(c));
-                }
+        if (numOfTopElements <= 0){
+            logger.warning("Number of top elements must be a positive integer");
+            return false;
+        }
+        return true;
+    }
 
-                TrieElement child = children.get(c);
-                child.insert(phrase, i + 1);
-            } else {
-                //increment the counter and return
-                phraseCount++;
-            }
+    /**
+     * Counts the phrases of the workers [fromWorker, toWorker). A single worker keeps claiming ranges
+     * of the file and counts them into its own trie, more workers are split in two halves whose tries
+     * are merged when both are done.
+     */
+    static class CountTask extends RecursiveTask<PhraseTrie> {
+        final FileChannel channel;
+        final long[] ranges;
+        final AtomicInteger nextRange;
+        final PhraseNormalizer normalizer;
+        final TopPhrasesMetrics metrics;
+        final int fromWorker;
+        final int toWorker;
+
+        CountTask(FileChannel channel, long[] ranges, AtomicInteger nextRange, PhraseNormalizer normalizer,
+                  TopPhrasesMetrics metrics, int fromWorker, int toWorker) {
+            this.channel = channel;
+            this.ranges = ranges;
+            this.nextRange = nextRange;
+            this.normalizer = normalizer;
+            this.metrics = metrics;
+            this.fromWorker = fromWorker;
+            this.toWorker = toWorker;
         }
 
-        public void addToQueue(StringBuilder wordBuilder, int topElements) {
-            wordBuilder.append(character);
-            if (phraseCount > 0) {
-                if (priorityQueue.size() >= topElements) {
-                    Phrase minOccurrencesPhrase = priorityQueue.peek();
-                    if (minOccurrencesPhrase.phraseCount < phraseCount) {
-                        priorityQueue.add(new Phrase(phraseCount, wordBuilder.toString()));
-                        priorityQueue.poll();
-                    }
-                } else {
-                    priorityQueue.add(new Phrase(phraseCount, wordBuilder.toString()));
+        @Override
+        protected PhraseTrie compute() {
+            if (toWorker - fromWorker > 1) {
+                int middle = (fromWorker + toWorker) >>> 1;
+                CountTask leftTask = new CountTask(channel, ranges, nextRange, normalizer, metrics, fromWorker, middle);
+                leftTask.fork();
+                PhraseTrie right = new CountTask(channel, ranges, nextRange, normalizer, metrics, middle, toWorker)
+                        .compute();
+                PhraseTrie left = leftTask.join();
+                // merge the smaller trie into the bigger one
+                if (left.size() >= right.size()) {
+                    left.merge(right);
+                    return left;
                 }
+                right.merge(left);
+                return right;
             }
-            for (TrieElement element : children.values()) {
-                element.addToQueue(wordBuilder, topElements);
 
+            PhraseTrie trie = new PhraseTrie();
+            // a normalizer stage is not thread safe, every worker has its own, and its own metrics recorder
+            PhraseScanner.PhraseConsumer consumer = metrics.wrap(normalizer.wrap(trie::add), trie);
+            try {
+                // range i is [ranges[i], ranges[i + 1])
+                for (int i = nextRange.getAndIncrement(); i < ranges.length - 1; i = nextRange.getAndIncrement()) {
+                    PhraseScanner.scan(channel, ranges[i], ranges[i + 1], PhraseScanner.DEFAULT_CHUNK_SIZE,
+                            consumer);
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
             }
-            // we don't need these anymore...
-            children.clear();
-
-            wordBuilder.deleteCharAt(wordBuilder.length() - 1);
+            return trie;
         }
     }
 
-    class Phrase implements Comparable {
+    static class Phrase implements Comparable<Phrase> {
         long phraseCount;
         String phrase;
+        // the real count is in [phraseCount - error, phraseCount], always 0 for the exact modes
+        long error;
 
         public Phrase(long phraseCount, String phrase) {
+            this(phraseCount, phrase, 0);
+        }
+
+        public Phrase(long phraseCount, String phrase, long error) {
             this.phraseCount = phraseCount;
             this.phrase = phrase;
+            this.error = error;
         }
 
+        /**
+         * Orders the phrases from the worst to the best: by count and, for equal counts, the phrase that
+         * comes last by its code points first. This is the order of the bytes of the phrases in UTF-8, so it
+         * breaks the ties the same way the {@link TopKSelector} does.
+         */
         @Override
-        public int compareTo(Object o) {
-            Phrase phrase = (Phrase) o;
-            return this.phraseCount > phrase.phraseCount ? 1 : (this.phraseCount < phrase.phraseCount ? -1 : 0);
+        public int compareTo(Phrase other) {
+            if (this.phraseCount != other.phraseCount) {
+                return this.phraseCount > other.phraseCount ? 1 : -1;
+            }
+            return compareCodePoints(other.phrase, this.phrase);
+        }
+
+        private static int compareCodePoints(String first, String second) {
+            int i = 0;
+            int j = 0;
+            while (i < first.length() && j < second.length()) {
+                int a = first.codePointAt(i);
+                int b = second.codePointAt(j);
+                if (a != b) {
+                    return Integer.compare(a, b);
+                }
+                i += Character.charCount(a);
+                j += Character.charCount(b);
+            }
+            return Integer.compare(first.length() - i, second.length() - j);
         }
 
         @Override
         public String toString() {
-            return "{" + phrase +" : " + phraseCount + '}';
+            return "{" + phrase +" : " + phraseCount + (error > 0 ? " (error " + error + ")" : "") + '}';
         }
     }
 }
@@ -0,0 +1,362 @@
+package gr.headstart.algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Finds the exact top phrases of shards that are counted on different hosts by {@link PhraseCountWorker}s.
+ * The simple way is to ask every worker for the counts of all its phrases and add them up, but then every
+ * distinct phrase crosses the network, once per host that has it. Asking every worker for its own top K is
+ * not enough either: a phrase can be a little below the top of every host and still be first in total.
+ *
+ * The coordinator uses the three phase uniform threshold algorithm (TPUT) instead, with m workers:
+ *
+ * 1. Every worker sends its top K phrases. Adding up the counts we got, where a missing count is taken as
+ *    0, gives a lower bound of the total of each phrase. Let tau1 be the K-th highest of these bounds, the
+ *    true K-th total is at least tau1.
+ * 2. Every worker sends the phrases with a count of at least t = ceil(tau1 / m). A phrase that no worker
+ *    sends has less than t on every host, so less than m * t total and it can not beat tau1. For every
+ *    phrase we got, a worker that did not send it has less than t of it, which gives an upper bound of its
+ *    total as well. Let tau2 be the K-th highest lower bound now. The phrases whose upper bound is below
+ *    tau2 are dropped.
+ * 3. Every worker sends its exact counts of the phrases that are left, and the top K of their totals are
+ *    the answer. The results are exact, equal counts are resolved by the phrase like in
+ *    {@link TopPhrases#find(String, int)}.
+ *
+ * Only the phrases that are close to the top cross the network, usually a small part of the distinct
+ * phrases. The workers are asked in parallel in every phase, over one connection each, and remember what
+ * they have sent, so a phrase is never sent twice by the same worker.
+ *
+ * A worker that is down or hung must not hang the query with it, so the connections are opened with a
+ * connect timeout and every answer has to start arriving within a read timeout. The read timeout has to be
+ * longer than the time a worker needs to select its phrases, which is a walk over its whole trie in the
+ * second phase. When a worker times out the query fails with a SocketTimeoutException.
+ */
+public final class TopPhrasesCoordinator {
+    private final static Logger logger = Logger.getLogger(TopPhrasesCoordinator.class.getName());
+
+    // the count a worker has not sent us yet
+    private static final long UNKNOWN = -1;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private final List<InetSocketAddress> workers;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private volatile long phrasesReceived;
+
+    public TopPhrasesCoordinator(List<InetSocketAddress> workers) {
+        this(workers, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param connectTimeoutMillis how long to wait for a connection to a worker, 0 waits forever
+     * @param readTimeoutMillis    how long to wait for a worker to send anything, 0 waits forever
+     */
+    public TopPhrasesCoordinator(List<InetSocketAddress> workers, int connectTimeoutMillis, int readTimeoutMillis) {
+        if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeouts can not be negative");
+        }
+        this.workers = new ArrayList<>(workers);
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public static void main(String[] args) throws IOException {
+        // read the arguments as "topPhrasesCount host1:port1 host2:port2 ..."
+        List<InetSocketAddress> workers = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            int colon = args[i].lastIndexOf(':');
+            workers.add(new InetSocketAddress(args[i].substring(0, colon),
+                    Integer.parseInt(args[i].substring(colon + 1))));
+        }
+
+        Queue<TopPhrases.Phrase> results = new TopPhrasesCoordinator(workers).find(Integer.parseInt(args[0]));
+        logger.info("Results: " + results);
+    }
+
+    /**
+     * The exact top phrases of all the workers, with the minimum count at the head of the queue like the
+     * one returned by {@link TopPhrases#find(String, int)}.
+     */
+    public Queue<TopPhrases.Phrase> find(int numOfTopElements) throws IOException {
+        if (numOfTopElements <= 0) {
+            logger.warning("Number of top elements must be a positive integer");
+            return null;
+        }
+
+        if (workers.isEmpty()) {
+            logger.warning("There are no workers to ask");
+            return null;
+        }
+
+        int m = workers.size();
+        List<Connection> connections = new ArrayList<>(m);
+        ExecutorService executor = Executors.newFixedThreadPool(m);
+        try {
+            for (int w = 0; w < m; w++) {
+                connections.add(new Connection(w, workers.get(w), connectTimeoutMillis, readTimeoutMillis));
+            }
+
+            // the counts of every phrase we got, by worker
+            Map<ByteBuffer, long[]> counts = new HashMap<>();
+            long received = 0;
+
+            // phase 1, the top of every worker
+            List<List<Entry>> tops = onAll(executor, connections, connection -> connection.top(numOfTopElements));
+            received += add(counts, tops, m);
+            long tau1 = kthLowerBound(counts, numOfTopElements);
+
+            // phase 2, everything above the uniform threshold, a phrase we did not get is below it everywhere
+            long threshold = Math.max(1, (tau1 + m - 1) / m);
+            List<List<Entry>> aboves = onAll(executor, connections, connection -> connection.above(threshold));
+            received += add(counts, aboves, m);
+            long tau2 = kthLowerBound(counts, numOfTopElements);
+
+            // a worker that did not send a phrase has at most threshold - 1 of it
+            List<List<byte[]>> missing = new ArrayList<>(m);
+            for (int w = 0; w < m; w++) {
+                missing.add(new ArrayList<>());
+            }
+            List<ByteBuffer> candidates = new ArrayList<>();
+            for (Map.Entry<ByteBuffer, long[]> entry : counts.entrySet()) { // O(n)
+                long lower = 0;
+                int unknown = 0;
+                for (long count : entry.getValue()) {
+                    if (count == UNKNOWN) {
+                        unknown++;
+                    } else {
+                        lower += count;
+                    }
+                }
+                if (lower + unknown * (threshold - 1) < tau2) {
+                    continue;
+                }
+                candidates.add(entry.getKey());
+                for (int w = 0; w < m; w++) {
+                    if (entry.getValue()[w] == UNKNOWN) {
+                        missing.get(w).add(entry.getKey().array());
+                    }
+                }
+            }
+
+            // phase 3, the exact counts of the candidates
+            List<long[]> exact = onAll(executor, connections,
+                    connection -> connection.counts(missing.get(connection.index)));
+            for (int w = 0; w < m; w++) {
+                List<byte[]> phrases = missing.get(w);
+                for (int i = 0; i < phrases.size(); i++) {
+                    counts.get(ByteBuffer.wrap(phrases.get(i)))[w] = exact.get(w)[i];
+                }
+            }
+            phrasesReceived = received;
+            logger.fine("Phrases received: " + received + ", candidates: " + candidates.size()
+                    + ", thresholds: " + tau1 + " " + threshold + " " + tau2);
+
+            Queue<TopPhrases.Phrase> priorityQueue = new PriorityQueue<>();
+            for (ByteBuffer candidate : candidates) {
+                long total = 0;
+                for (long count : counts.get(candidate)) {
+                    total += count;
+                }
+                TopPhrases.Phrase phrase = new TopPhrases.Phrase(total,
+                        new String(candidate.array(), StandardCharsets.UTF_8));
+                if (priorityQueue.size() < numOfTopElements) {
+                    priorityQueue.add(phrase);
+                } else if (phrase.compareTo(priorityQueue.peek()) > 0) {
+                    priorityQueue.poll();
+                    priorityQueue.add(phrase);
+                }
+            }
+            return priorityQueue;
+        } finally {
+            executor.shutdownNow();
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * The number of phrases the workers sent in the first two phases of the last query, the third one
+     * sends only counts. Compare it with the distinct phrases of the workers to see what was saved.
+     */
+    public long phrasesReceived() {
+        return phrasesReceived;
+    }
+
+    // records the phrases every worker sent and returns how many they were
+    private static long add(Map<ByteBuffer, long[]> counts, List<List<Entry>> received, int m) {
+        long size = 0;
+        for (int w = 0; w < m; w++) {
+            for (Entry entry : received.get(w)) {
+                long[] byWorker = counts.get(ByteBuffer.wrap(entry.phrase));
+                if (byWorker == null) {
+                    byWorker = new long[m];
+                    Arrays.fill(byWorker, UNKNOWN);
+                    counts.put(ByteBuffer.wrap(entry.phrase), byWorker);
+                }
+                byWorker[w] = entry.count;
+                size++;
+            }
+        }
+        return size;
+    }
+
+    // the K-th highest sum of the known counts, 0 if there are less than K phrases
+    private static long kthLowerBound(Map<ByteBuffer, long[]> counts, int k) {
+        if (counts.size() < k) {
+            return 0;
+        }
+        PriorityQueue<Long> highest = new PriorityQueue<>(k);
+        for (long[] byWorker : counts.values()) { // O(n * log(k))
+            long lower = 0;
+            for (long count : byWorker) {
+                if (count != UNKNOWN) {
+                    lower += count;
+                }
+            }
+            if (highest.size() < k) {
+                highest.add(lower);
+            } else if (lower > highest.peek()) {
+                highest.poll();
+                highest.add(lower);
+            }
+        }
+        return highest.peek();
+    }
+
+    // sends the same request to all the workers in parallel
+    private static <T> List<T> onAll(ExecutorService executor, List<Connection> connections, Request<T> request)
+            throws IOException {
+        List<Future<T>> futures = new ArrayList<>(connections.size());
+        for (Connection connection : connections) {
+            futures.add(executor.submit(() -> request.send(connection)));
+        }
+        List<T> results = new ArrayList<>(connections.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the workers", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException("A worker request failed", ee.getCause());
+        }
+        return results;
+    }
+
+    private interface Request<T> {
+        T send(Connection connection) throws IOException;
+    }
+
+    private static final class Entry {
+        final byte[] phrase;
+        final long count;
+
+        Entry(byte[] phrase, long count) {
+            this.phrase = phrase;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The session with a single worker.
+     */
+    private static final class Connection implements Closeable {
+        final int index;
+        final InetSocketAddress address;
+        final Socket socket;
+        final DataInputStream input;
+        final DataOutputStream output;
+
+        Connection(int index, InetSocketAddress address, int connectTimeoutMillis, int readTimeoutMillis)
+                throws IOException {
+            this.index = index;
+            this.address = address;
+            this.socket = new Socket();
+            try {
+                socket.connect(address, connectTimeoutMillis);
+                socket.setSoTimeout(readTimeoutMillis);
+                this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException ioe) {
+                socket.close();
+                throw ioe;
+            }
+        }
+
+        List<Entry> top(int k) throws IOException {
+            output.writeByte(PhraseCountProtocol.TOP);
+            output.writeInt(k);
+            output.flush();
+            return readEntries();
+        }
+
+        List<Entry> above(long threshold) throws IOException {
+            output.writeByte(PhraseCountProtocol.ABOVE);
+            output.writeLong(threshold);
+            output.flush();
+            return readEntries();
+        }
+
+        long[] counts(List<byte[]> phrases) throws IOException {
+            output.writeByte(PhraseCountProtocol.COUNTS);
+            output.writeInt(phrases.size());
+            for (byte[] phrase : phrases) {
+                PhraseCountProtocol.writePhrase(output, phrase);
+            }
+            output.flush();
+            long[] counts = new long[phrases.size()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = input.readLong();
+            }
+            return counts;
+        }
+
+        private List<Entry> readEntries() throws IOException {
+            int size = PhraseCountProtocol.readSize(input);
+            List<Entry> entries = new ArrayList<>(Math.min(size, 1 << 16));
+            for (int i = 0; i < size; i++) {
+                byte[] phrase = PhraseCountProtocol.readPhrase(input);
+                entries.add(new Entry(phrase, input.readLong()));
+            }
+            return entries;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(address);
+        }
+    }
+}
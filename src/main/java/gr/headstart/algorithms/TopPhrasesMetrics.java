@@ -0,0 +1,328 @@
+package gr.headstart.algorithms;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Shows what a long {@link TopPhrases} run is doing while it runs: how much of the file it has read, how
+ * fast, how big the trie has grown and how the time is split between the phases. Give it to the TopPhrases
+ * constructor, then read it directly, register it as an MBean to watch it with jconsole or any JMX client,
+ * or let it log a line periodically.
+ *
+ * The phases are SCAN, the pass over the input file, COUNT, the counting that comes after the scan (the
+ * partitions of the external mode), and SELECT, the selection of the top phrases. In find and findParallel
+ * the phrases are counted while the file is scanned, so that time is all in SCAN.
+ *
+ * The counters must not slow down the counting, which runs at hundreds of MB per second. So there is no
+ * shared counter that every thread increments for every phrase. Each thread that scans the file gets a
+ * recorder of its own and counts the phrases in a plain field, which costs about nothing. After each chunk
+ * of the file, every 64MB, the recorder publishes its totals with lazySet, an ordered store that does not
+ * wait for the other cores to see it. The getters add up the published totals of all the recorders, so the
+ * work of aggregating is done only when somebody asks. The values may be behind by up to a chunk per thread.
+ *
+ * The size of the trie is also published per chunk, so during the scan of findParallel it is the sum of the
+ * tries of the workers, which is more than the merged trie will be. When the counting is over it is replaced
+ * by the real size.
+ *
+ * A metrics object follows one run at a time. It is reset when the next run starts.
+ */
+public class TopPhrasesMetrics implements TopPhrasesMetricsMBean {
+    private final static Logger logger = Logger.getLogger(TopPhrasesMetrics.class.getName());
+
+    public enum Phase {
+        SCAN, COUNT, SELECT
+    }
+
+    /**
+     * Records nothing and adds nothing to the counting, used when no metrics are given.
+     */
+    static final TopPhrasesMetrics NONE = new TopPhrasesMetrics(false);
+
+    // the totals a recorder publishes
+    private static final int BYTES = 0;
+    private static final int LINES = 1;
+    private static final int PHRASES = 2;
+    private static final int NODES = 3;
+    private static final int MEMORY = 4;
+    private static final int DISTINCT = 5;
+
+    private final boolean enabled;
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+
+    private volatile boolean started;
+    private volatile Phase phase;
+    private volatile long phaseStart;
+    private volatile long runStart;
+    private volatile long runEnd;
+    // the trie after counting, null while counting
+    private volatile long[] trie;
+
+    private ObjectName name;
+    private ScheduledExecutorService logging;
+
+    public TopPhrasesMetrics() {
+        this(true);
+    }
+
+    private TopPhrasesMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server as gr.headstart.algorithms:type=TopPhrases,name=name.
+     */
+    public synchronized void register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("gr.headstart.algorithms:type=TopPhrases,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    /**
+     * Logs the metrics every period until {@link #stopLogging()} is called.
+     */
+    public synchronized void startLogging(long period, TimeUnit unit) {
+        stopLogging();
+        logging = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "top-phrases-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logging.scheduleAtFixedRate(() -> logger.info(toString()), period, period, unit);
+    }
+
+    public synchronized void stopLogging() {
+        if (logging != null) {
+            logging.shutdownNow();
+            logging = null;
+        }
+    }
+
+    /**
+     * Resets the metrics for a new run.
+     */
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        recorders.clear();
+        for (int i = 0; i < phaseNanos.length(); i++) {
+            phaseNanos.set(i, 0);
+        }
+        trie = null;
+        runStart = System.nanoTime();
+        runEnd = 0;
+        phase = null;
+        started = true;
+    }
+
+    /**
+     * Ends the current phase, if any, and starts the next one.
+     */
+    void phase(Phase next) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (phase != null) {
+            phaseNanos.addAndGet(phase.ordinal(), now - phaseStart);
+        }
+        phaseStart = now;
+        phase = next;
+    }
+
+    void finish() {
+        if (!enabled) {
+            return;
+        }
+        phase(null);
+        runEnd = System.nanoTime();
+    }
+
+    /**
+     * Sets the trie that came out of the counting, or the trie of the partition that was just counted.
+     */
+    void counted(PhraseTrie counted) {
+        if (enabled) {
+            trie = new long[]{counted.size(), counted.memoryUsage(), counted.distinct()};
+        }
+    }
+
+    /**
+     * Returns a consumer that counts the phrases and the chunks of the scanning thread and passes the phrases
+     * on. The trie is the one the thread counts into, or null if it does not count into a trie.
+     */
+    PhraseScanner.PhraseConsumer wrap(PhraseScanner.PhraseConsumer downstream, PhraseTrie trie) {
+        if (!enabled) {
+            return downstream;
+        }
+        Recorder recorder = new Recorder(downstream, trie);
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    @Override
+    public String getPhase() {
+        Phase current = phase;
+        return current != null ? current.name() : started ? "DONE" : "IDLE";
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        if (!started) {
+            return 0;
+        }
+        long end = runEnd;
+        return TimeUnit.NANOSECONDS.toMillis((end != 0 ? end : System.nanoTime()) - runStart);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return sum(BYTES);
+    }
+
+    @Override
+    public long getLines() {
+        return sum(LINES);
+    }
+
+    @Override
+    public long getPhrases() {
+        return sum(PHRASES);
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getBytesRead());
+    }
+
+    @Override
+    public double getLinesPerSecond() {
+        return perSecond(getLines());
+    }
+
+    @Override
+    public double getPhrasesPerSecond() {
+        return perSecond(getPhrases());
+    }
+
+    @Override
+    public long getDistinctPhrases() {
+        long[] counted = trie;
+        return counted != null ? counted[2] : sum(DISTINCT);
+    }
+
+    @Override
+    public long getTrieNodes() {
+        long[] counted = trie;
+        return counted != null ? counted[0] : sum(NODES);
+    }
+
+    @Override
+    public long getTrieMemoryBytes() {
+        long[] counted = trie;
+        return counted != null ? counted[1] : sum(MEMORY);
+    }
+
+    @Override
+    public long getScanMillis() {
+        return phaseMillis(Phase.SCAN);
+    }
+
+    @Override
+    public long getCountMillis() {
+        return phaseMillis(Phase.COUNT);
+    }
+
+    @Override
+    public long getSelectMillis() {
+        return phaseMillis(Phase.SELECT);
+    }
+
+    @Override
+    public String toString() {
+        return "phase " + getPhase() + ", " + getElapsedMillis() + "ms"
+                + ", read " + getBytesRead() / (1024 * 1024) + "MB (" + (long) (getBytesPerSecond() / (1024 * 1024)) + "MB/s)"
+                + ", " + getLines() + " lines (" + (long) getLinesPerSecond() + "/s)"
+                + ", " + getPhrases() + " phrases (" + (long) getPhrasesPerSecond() + "/s)"
+                + ", " + getDistinctPhrases() + " distinct"
+                + ", trie " + getTrieNodes() + " nodes " + getTrieMemoryBytes() / (1024 * 1024) + "MB"
+                + ", scan " + getScanMillis() + "ms, count " + getCountMillis() + "ms, select " + getSelectMillis() + "ms";
+    }
+
+    private long sum(int total) {
+        long sum = 0;
+        for (Recorder recorder : recorders) {
+            sum += recorder.published.get(total);
+        }
+        return sum;
+    }
+
+    private double perSecond(long value) {
+        long millis = getElapsedMillis();
+        return millis == 0 ? 0 : value * 1000.0 / millis;
+    }
+
+    private long phaseMillis(Phase of) {
+        long nanos = phaseNanos.get(of.ordinal());
+        if (phase == of) {
+            nanos += System.nanoTime() - phaseStart;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * The counters of a single scanning thread. Only that thread writes them, so the phrases are counted in a
+     * plain field and published with the rest once per chunk.
+     */
+    private static final class Recorder implements PhraseScanner.PhraseConsumer {
+        private final PhraseScanner.PhraseConsumer downstream;
+        private final PhraseTrie trie;
+        private final AtomicLongArray published = new AtomicLongArray(6);
+        private long bytes;
+        private long lines;
+        private long phrases;
+
+        Recorder(PhraseScanner.PhraseConsumer downstream, PhraseTrie trie) {
+            this.downstream = downstream;
+            this.trie = trie;
+        }
+
+        @Override
+        public void accept(ByteBuffer buffer, int from, int to) {
+            phrases++;
+            downstream.accept(buffer, from, to);
+        }
+
+        @Override
+        public void chunkScanned(long chunkBytes, long chunkLines) {
+            bytes += chunkBytes;
+            lines += chunkLines;
+            published.lazySet(BYTES, bytes);
+            published.lazySet(LINES, lines);
+            published.lazySet(PHRASES, phrases);
+            if (trie != null) {
+                published.lazySet(NODES, trie.size());
+                published.lazySet(MEMORY, trie.memoryUsage());
+                published.lazySet(DISTINCT, trie.distinct());
+            }
+            downstream.chunkScanned(chunkBytes, chunkLines);
+        }
+    }
+}
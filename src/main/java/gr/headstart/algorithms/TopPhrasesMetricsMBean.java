@@ -0,0 +1,38 @@
+package gr.headstart.algorithms;
+
+/**
+ * The attributes of a {@link TopPhrasesMetrics} as they are shown by JMX clients like jconsole.
+ */
+public interface TopPhrasesMetricsMBean {
+
+    /**
+     * SCAN, COUNT or SELECT while a run is in progress, IDLE before the first run and DONE after a run.
+     */
+    String getPhase();
+
+    long getElapsedMillis();
+
+    long getBytesRead();
+
+    long getLines();
+
+    long getPhrases();
+
+    double getBytesPerSecond();
+
+    double getLinesPerSecond();
+
+    double getPhrasesPerSecond();
+
+    long getDistinctPhrases();
+
+    long getTrieNodes();
+
+    long getTrieMemoryBytes();
+
+    long getScanMillis();
+
+    long getCountMillis();
+
+    long getSelectMillis();
+}
@@ -0,0 +1,112 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRunnerTest {
+    Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("phrases", ".txt");
+        Files.write(file, "Foobar Candy | PGA | CNET\nPGA | Foobar Candy | PGA\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRun_json() throws Exception {
+        String jobs = "# a comment\n"
+                + "palindrome 1221\n"
+                + "palindrome 1121\n"
+                + "\n"
+                + "pairs 10 0 1 5 10 10 9\n"
+                + "count-pairs 10 0 1 5 10 10 9\n"
+                + "top " + file + " 2\n"
+                + "top " + file + " 2 parallel\n";
+        Map<Long, String> results = run(BatchRunner.Format.JSON, jobs, 6);
+        assertEquals("{\"id\":2,\"job\":\"palindrome\",\"status\":\"ok\",\"result\":true}", results.get(2L));
+        assertEquals("{\"id\":3,\"job\":\"palindrome\",\"status\":\"ok\",\"result\":false}", results.get(3L));
+        assertEquals("{\"id\":5,\"job\":\"pairs\",\"status\":\"ok\",\"result\":[[0,3], [0,4], [1,5]]}",
+                results.get(5L));
+        assertEquals("{\"id\":6,\"job\":\"count-pairs\",\"status\":\"ok\",\"result\":3}", results.get(6L));
+        String top = "\"status\":\"ok\",\"result\":[{\"phrase\":\"PGA\",\"count\":3},{\"phrase\":\"Foobar Candy\",\"count\":2}]}";
+        assertEquals("{\"id\":7,\"job\":\"top\"," + top, results.get(7L));
+        assertEquals("{\"id\":8,\"job\":\"top\"," + top, results.get(8L));
+    }
+
+    @Test
+    public void testRun_csv() throws Exception {
+        StringWriter output = new StringWriter();
+        try (BatchRunner runner = new BatchRunner(BatchRunner.Format.CSV, 1)) {
+            assertEquals(2, runner.run(new StringReader("pairs 10 0 10\ncount-pairs 10 0 10\n"), output));
+        }
+        String[] lines = output.toString().split("\n");
+        assertEquals("id,job,status,micros,result", lines[0]);
+        assertTrue(lines[1].matches("1,pairs,ok,\\d+,\"\\[\\[0,1]]\""));
+        assertTrue(lines[2].matches("2,count-pairs,ok,\\d+,1"));
+    }
+
+    @Test
+    public void testRun_invalid_jobs() throws Exception {
+        String jobs = "sort 3 2 1\n"
+                + "pairs 10 x\n"
+                + "top " + file + "\n"
+                + "top blahblah.txt 3\n"
+                + "top " + file + " 2 approximate\n";
+        Map<Long, String> results = run(BatchRunner.Format.JSON, jobs, 5);
+        assertEquals("{\"id\":1,\"job\":\"sort\",\"status\":\"error\",\"error\":\"Unknown job sort\"}", results.get(1L));
+        assertEquals("{\"id\":2,\"job\":\"pairs\",\"status\":\"error\",\"error\":\"Not a number: x\"}", results.get(2L));
+        for (long id = 3; id <= 5; id++) {
+            assertTrue(results.get(id).contains("\"status\":\"error\""));
+        }
+    }
+
+    @Test
+    public void testRun_many_jobs() throws Exception {
+        StringBuilder jobs = new StringBuilder();
+        for (int i = 0; i < 3 * BatchRunner.MAX_IN_FLIGHT; i++) {
+            jobs.append("count-pairs ").append(i).append(" 0 1 2 3 4 5 6 7 8 9\n");
+        }
+        Map<Long, String> results = run(BatchRunner.Format.JSON, jobs.toString(), 3 * BatchRunner.MAX_IN_FLIGHT);
+        assertTrue(results.get(10L).endsWith("\"result\":5}"));
+        assertTrue(results.get(100L).endsWith("\"result\":0}"));
+    }
+
+    @Test
+    public void testJson_and_csv_quoting() throws Exception {
+        assertEquals("\"a \\\"b\\\" \\\\ \\u000a\"", BatchRunner.json("a \"b\" \\ \n"));
+        assertEquals("plain", BatchRunner.csv("plain"));
+        assertEquals("\"a,\"\"b\"\"\"", BatchRunner.csv("a,\"b\""));
+    }
+
+    // runs the jobs and returns the lines by id, without the times that change from run to run
+    private static Map<Long, String> run(BatchRunner.Format format, String jobs, int expected) throws Exception {
+        StringWriter output = new StringWriter();
+        try (BatchRunner runner = new BatchRunner(format, 0)) {
+            assertEquals(expected, runner.run(new StringReader(jobs), output));
+        }
+        Map<Long, String> results = new HashMap<>();
+        for (String line : output.toString().split("\n")) {
+            long id = Long.parseLong(line.substring("{\"id\":".length(), line.indexOf(',')));
+            results.put(id, line.replaceFirst(",\"micros\":\\d+", ""));
+        }
+        assertEquals(expected, results.size());
+        return results;
+    }
+}
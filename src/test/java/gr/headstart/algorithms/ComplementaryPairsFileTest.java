@@ -0,0 +1,241 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ComplementaryPairsFileTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("complementary-pairs-test");
+        file = directory.resolve("values.bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        ComplementaryPairsFile.write(file, new int[]{3, 1, 3, 9, 5, 7, 5, 7, 5, 4});
+        ComplementaryPairsFile pairsFile = new ComplementaryPairsFile(file, 3);
+
+        assertEquals(10, pairsFile.size());
+        assertEquals(8, pairsFile.count(10));
+        long[] counts = pairsFile.counts(new int[]{10, 6, 100});
+        assertEquals(8, counts[0]);
+        assertEquals(4, counts[1]);
+        assertEquals(0, counts[2]);
+        assertNull(pairsFile.counts(null));
+    }
+
+    @Test
+    public void testCountsMatchTheInMemoryPath() throws Exception {
+        Random random = new Random(5);
+        int[] values = new int[20000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(400) - 200;
+        }
+        ComplementaryPairsFile.write(file, values);
+
+        int[] ks = new int[20];
+        for (int i = 0; i < ks.length; i++) {
+            ks[i] = random.nextInt(500) - 250;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // small chunks so that many workers take part
+            long[] counts = new ComplementaryPairsFile(file, 1000).counts(ks, pool);
+            ComplementaryPairsIndex index = new ComplementaryPairsIndex(values);
+            for (int i = 0; i < ks.length; i++) {
+                assertEquals(index.count(ks[i]), counts[i]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPairsMatchTheInMemoryPath() throws Exception {
+        Random random = new Random(9);
+        int[] values = new int[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(100) - 50;
+        }
+        ComplementaryPairsFile.write(file, values);
+
+        List<String> expected = new ArrayList<>();
+        new ComplementaryPairs().forEachPair(4, values, (first, second) -> expected.add(first + "," + second));
+
+        // a tiny budget to spread the records over many partitions
+        List<String> pairs = new ArrayList<>();
+        long emitted = new ComplementaryPairsFile(file, 777).forEachPair(4, (first, second) -> {
+            assertTrue(first < second);
+            pairs.add(first + "," + second);
+            return true;
+        }, 4096, directory);
+
+        assertEquals(expected.size(), emitted);
+        Collections.sort(expected);
+        Collections.sort(pairs);
+        assertEquals(expected, pairs);
+        // the partitions are gone
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                assertEquals(file, path);
+            }
+        }
+    }
+
+    @Test
+    public void testPairs_more_partitions_than_can_be_open() throws Exception {
+        Random random = new Random(10);
+        int[] values = new int[50000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(20000) - 10000;
+        }
+        ComplementaryPairsFile.write(file, values);
+
+        List<String> expected = new ArrayList<>();
+        new ComplementaryPairs().forEachPair(7, values, (first, second) -> expected.add(first + "," + second));
+
+        // the budget needs more than SpillPartitions.MAX_FAN_OUT partitions, so they are split again
+        List<String> pairs = new ArrayList<>();
+        long emitted = new ComplementaryPairsFile(file).forEachPair(7, (first, second) -> {
+            pairs.add(first + "," + second);
+            return true;
+        }, 1024, directory);
+
+        assertEquals(expected.size(), emitted);
+        Collections.sort(expected);
+        Collections.sort(pairs);
+        assertEquals(expected, pairs);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                assertEquals(file, path);
+            }
+        }
+    }
+
+    @Test
+    public void testCounts_more_values_than_the_budget() throws Exception {
+        Random random = new Random(11);
+        int[] values = new int[30000];
+        for (int i = 0; i < values.length; i++) {
+            // a few values all over the ints, and many close to each other so that some ranges are split
+            // down to single values
+            values[i] = i % 10 == 0 ? random.nextInt() : random.nextInt(300) - 150;
+        }
+        values[0] = Integer.MIN_VALUE;
+        values[1] = Integer.MAX_VALUE;
+        values[2] = -1;
+        ComplementaryPairsFile.write(file, values);
+
+        int[] ks = {0, -1, 7, 299, -300, values[3] + values[4], Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            // far too small for a histogram of the 3000 distinct values
+            long[] counts = new ComplementaryPairsFile(file, 1000).counts(ks, pool, 4096, directory);
+            ComplementaryPairsIndex index = new ComplementaryPairsIndex(values);
+            for (int i = 0; i < ks.length; i++) {
+                assertEquals(index.count(ks[i]), counts[i]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertNull(new ComplementaryPairsFile(file).counts(ks, ForkJoinPool.commonPool(), 0, directory));
+        // the range partitions are gone
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                assertEquals(file, path);
+            }
+        }
+    }
+
+    @Test
+    public void testPairs_more_values_than_the_budget() throws Exception {
+        Random random = new Random(12);
+        int[] values = new int[3000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(2000) - 1000;
+        }
+        ComplementaryPairsFile.write(file, values);
+
+        List<String> expected = new ArrayList<>();
+        new ComplementaryPairs().forEachPair(-3, values, (first, second) -> expected.add(first + "," + second));
+
+        // no histogram fits, so all the records are partitioned
+        List<String> pairs = new ArrayList<>();
+        long emitted = new ComplementaryPairsFile(file).forEachPair(-3, (first, second) -> {
+            pairs.add(first + "," + second);
+            return true;
+        }, 2048, directory);
+
+        assertEquals(expected.size(), emitted);
+        Collections.sort(expected);
+        Collections.sort(pairs);
+        assertEquals(expected, pairs);
+    }
+
+    @Test
+    public void testPairsStop() throws Exception {
+        int[] values = new int[1000];
+        Arrays.fill(values, 5);
+        ComplementaryPairsFile.write(file, values);
+
+        long[] seen = new long[1];
+        long emitted = new ComplementaryPairsFile(file).forEachPair(10, (first, second) -> ++seen[0] < 5);
+        assertEquals(5, emitted);
+        assertEquals(5, seen[0]);
+    }
+
+    @Test
+    public void testNoPairs() throws Exception {
+        ComplementaryPairsFile.write(file, new int[]{1, 2, 3});
+        assertEquals(0, new ComplementaryPairsFile(file).forEachPair(100, (first, second) -> true));
+        assertEquals(0, new ComplementaryPairsFile(file).count(100));
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        ComplementaryPairsFile.write(file, new int[0]);
+        assertEquals(0, new ComplementaryPairsFile(file).count(10));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMisalignedFile() throws Exception {
+        Files.write(file, new byte[]{1, 2, 3, 4, 5});
+        new ComplementaryPairsFile(file).count(10);
+    }
+
+    @Test
+    public void testInvalidBudget() throws Exception {
+        ComplementaryPairsFile.write(file, new int[]{5, 5});
+        assertEquals(0, new ComplementaryPairsFile(file).forEachPair(10, (first, second) -> true, 0, directory));
+    }
+}
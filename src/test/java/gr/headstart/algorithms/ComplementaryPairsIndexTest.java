@@ -0,0 +1,72 @@
+package gr.headstart.algorithms;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class ComplementaryPairsIndexTest {
+
+    @Test
+    public void testCount() throws Exception {
+        ComplementaryPairsIndex index = new ComplementaryPairsIndex(new int[]{3, 1, 3, 9, 5, 7, 5, 7, 5, 4});
+
+        assertEquals(10, index.size());
+        assertEquals(6, index.distinctValues());
+        assertEquals(8, index.count(10));
+        // 3+3, 1+5, 5+1
+        assertEquals(1 + 3, index.count(6));
+        assertEquals(0, index.count(100));
+        assertEquals(0, new ComplementaryPairsIndex(new int[0]).count(10));
+    }
+
+    @Test
+    public void testCountOverflow() throws Exception {
+        ComplementaryPairsIndex index = new ComplementaryPairsIndex(
+                new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1, Integer.MIN_VALUE});
+
+        assertEquals(1, index.count(-2));
+        assertEquals(2, index.count(-1));
+        assertEquals(0, index.count(0));
+    }
+
+    @Test
+    public void testPairs() throws Exception {
+        int[] values = {3, 1, 3, 9, 5, 7, 5, 7, 5, 4};
+        ComplementaryPairsIndex index = new ComplementaryPairsIndex(values);
+        // the index keeps its own copy
+        values[0] = 100;
+
+        assertEquals("[[0,5], [0,7], [1,3], [2,5], [2,7], [4,6], [4,8], [6,8]]", String.valueOf(index.pairs(10)));
+        assertEquals("[[0,2], [1,4], [1,6], [1,8]]", String.valueOf(index.pairs(6)));
+    }
+
+    @Test
+    public void testCountsMatchTheArrayMethods() throws Exception {
+        Random random = new Random(11);
+        int[] values = new int[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(200) - 100;
+        }
+        int[] ks = new int[64];
+        for (int i = 0; i < ks.length; i++) {
+            ks[i] = random.nextInt(300) - 150;
+        }
+
+        ComplementaryPairsIndex index = new ComplementaryPairsIndex(values);
+        ComplementaryPairs complementaryPairs = new ComplementaryPairs();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long[] counts = index.counts(ks, pool);
+            for (int i = 0; i < ks.length; i++) {
+                assertEquals(complementaryPairs.count(ks[i], values), counts[i]);
+                assertEquals(index.pairs(ks[i]).size(), counts[i]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(index.count(ks[0]), index.counts(ks)[0]);
+    }
+}
@@ -3,11 +3,14 @@ package gr.headstart.algorithms;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.logging.Logger;
 
 import gr.headstart.algorithms.ComplementaryPairs;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -82,4 +85,103 @@ public class ComplementaryPairsTest {
         logger.info("Results: " + String.valueOf(results));
         assertTrue(results.size() == 10);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetKComplementaryPairs_int_array_order() throws Exception {
+        logger.info("Input: 10, {3,1,3,9,5,7,5,7,5,4}");
+        ComplementaryPairs.PairBuffer results = complementaryPairs.calculatePairs(10, new int[]{3,1,3,9,5,7,5,7,5,4});
+        logger.info("Results: " + String.valueOf(results));
+        assertEquals("[[0,5], [0,7], [1,3], [2,5], [2,7], [4,6], [4,8], [6,8]]", String.valueOf(results));
+        assertEquals(String.valueOf(complementaryPairs.calculate(10, new Integer[]{3,1,3,9,5,7,5,7,5,4})),
+                String.valueOf(results));
+    }
+
+    @Test
+    public void testGetKComplementaryPairs_int_array_null_and_empty_input() throws Exception {
+        assertNull(complementaryPairs.calculatePairs(10, null));
+        assertNull(complementaryPairs.calculatePairs(10, new int[0]));
+    }
+
+    @Test
+    public void testGetKComplementaryPairs_int_array_overflow() throws Exception {
+        // MAX_VALUE + MAX_VALUE wraps around to -2 as an int, but it is not a pair for k = -2
+        ComplementaryPairs.PairBuffer results = complementaryPairs.calculatePairs(-2,
+                new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1, Integer.MIN_VALUE});
+        assertEquals("[[2,3]]", String.valueOf(results));
+    }
+
+    @Test
+    public void testGetKComplementaryPairs_int_array_random() throws Exception {
+        Random random = new Random(42);
+        int[] values = new int[2000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(100) - 50;
+        }
+
+        ComplementaryPairs.PairBuffer results = complementaryPairs.calculatePairs(7, values);
+
+        // the double loop gives the same pairs in the same order
+        int expected = 0;
+        for (int i = 0; i < values.length; i++) {
+            for (int j = i + 1; j < values.length; j++) {
+                if (values[i] + values[j] == 7) {
+                    assertEquals(i, results.first(expected));
+                    assertEquals(j, results.second(expected));
+                    expected++;
+                }
+            }
+        }
+        assertEquals(expected, results.size());
+    }
+
+    @Test
+    public void testGetKComplementaryPairs_first_pairs() throws Exception {
+        int[] values = new int[100000];
+        Arrays.fill(values, 5);
+
+        // 5 billion pairs, take only the first 3
+        ComplementaryPairs.PairBuffer results = new ComplementaryPairs.PairBuffer();
+        long emitted = complementaryPairs.forEachPair(10, values,
+                (first, second) -> results.accept(first, second) && results.size() < 3);
+        assertEquals(3, emitted);
+        assertEquals("[[0,1], [0,2], [0,3]]", String.valueOf(results));
+    }
+
+    @Test
+    public void testGetKComplementaryPairs_consumer_sees_all_pairs() throws Exception {
+        long[] sum = new long[1];
+        long emitted = complementaryPairs.forEachPair(10, new int[]{3,1,3,9,5,7,5,7,5,4}, (first, second) -> {
+            sum[0] += first + second;
+            return true;
+        });
+        assertEquals(8, emitted);
+        assertEquals(5 + 7 + 4 + 7 + 9 + 10 + 12 + 14, sum[0]);
+        assertEquals(0, complementaryPairs.forEachPair(10, null, (first, second) -> true));
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        assertEquals(2, complementaryPairs.count(10, new int[]{3,1,9,5,7,4}));
+        assertEquals(8, complementaryPairs.count(10, new int[]{3,1,3,9,5,7,5,7,5,4}));
+        assertEquals(0, complementaryPairs.count(10, new int[]{3, 3, 3, 3, 3}));
+        assertEquals(10, complementaryPairs.count(10, new int[]{5, 5, 5, 5, 5}));
+        assertEquals(0, complementaryPairs.count(10, null));
+        assertEquals(1, complementaryPairs.count(-2, new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1}));
+
+        int[] values = new int[100000];
+        Arrays.fill(values, 5);
+        assertEquals(100000L * 99999 / 2, complementaryPairs.count(10, values));
+    }
+
+    @Test
+    public void testCount_random() throws Exception {
+        Random random = new Random(7);
+        int[] values = new int[3000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(60) - 30;
+        }
+        for (int k = -20; k <= 20; k += 5) {
+            assertEquals(complementaryPairs.calculatePairs(k, values).size(), complementaryPairs.count(k, values));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package gr.headstart.algorithms;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IntLongHistogramTest {
+
+    @Test
+    public void testAddAndGrow() throws Exception {
+        IntLongHistogram histogram = new IntLongHistogram();
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            int value = random.nextInt(5000) - 2500;
+            histogram.add(value);
+            expected.merge(value, 1L, Long::sum);
+        }
+        histogram.add(0, 0);
+
+        assertEquals(expected.size(), histogram.size());
+        for (Map.Entry<Integer, Long> entry : expected.entrySet()) {
+            assertEquals((long) entry.getValue(), histogram.count(entry.getKey()));
+        }
+        assertEquals(0, histogram.count(1000000));
+    }
+
+    @Test
+    public void testMergeAndPairs() throws Exception {
+        IntLongHistogram first = new IntLongHistogram();
+        IntLongHistogram second = new IntLongHistogram();
+        int[] values = {3, 1, 3, 9, 5, 7, 5, 7, 5, 4, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int i = 0; i < values.length; i++) {
+            (i % 2 == 0 ? first : second).add(values[i]);
+        }
+        first.merge(second);
+
+        assertEquals(3, first.count(5));
+        assertEquals(8, first.pairs(10));
+        assertEquals(1, first.pairs(-1));
+        assertEquals(0, first.pairs(100));
+
+        long[] total = new long[1];
+        first.forEach((value, count) -> total[0] += count);
+        assertEquals(values.length, total[0]);
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        IntLongHistogram histogram = new IntLongHistogram(4, 10);
+        for (int value = 0; value < 10; value++) {
+            histogram.add(value);
+        }
+        // the values that are there can still be counted
+        histogram.add(3, 5);
+        try {
+            histogram.add(10);
+            fail("An eleventh distinct value was added");
+        } catch (IntLongHistogram.TooManyValuesException expected) {
+            // the histogram is unchanged
+        }
+        assertEquals(10, histogram.size());
+        assertEquals(6, histogram.count(3));
+        assertEquals(0, histogram.count(10));
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        assertEquals(16, IntLongHistogram.capacity(0));
+        assertEquals(16, IntLongHistogram.capacity(8));
+        assertEquals(32, IntLongHistogram.capacity(9));
+        // the largest histogram fits in the largest table, and the table size never wraps around
+        assertEquals(IntLongHistogram.MAX_CAPACITY, IntLongHistogram.capacity(IntLongHistogram.MAX_SIZE));
+        assertEquals(IntLongHistogram.MAX_CAPACITY, IntLongHistogram.capacity(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,72 @@
+package gr.headstart.algorithms;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntValueIndexTest {
+
+    @Test
+    public void testGroupsAndPostings() throws Exception {
+        IntValueIndex index = new IntValueIndex(new int[]{5, -3, 5, 0, -3, 5});
+
+        assertEquals(3, index.groups());
+        assertEquals(-1, index.group(7));
+
+        int five = index.group(5);
+        assertEquals(5, index.value(five));
+        assertEquals(3, index.count(five));
+        assertEquals(0, index.posting(index.groupStart(five)));
+        assertEquals(2, index.posting(index.groupStart(five) + 1));
+        assertEquals(5, index.posting(index.groupStart(five) + 2));
+
+        int minusThree = index.group(-3);
+        assertEquals(2, index.count(minusThree));
+        assertEquals(1, index.posting(index.groupStart(minusThree)));
+        assertEquals(4, index.posting(index.groupStart(minusThree) + 1));
+    }
+
+    @Test
+    public void testFirstAfter() throws Exception {
+        IntValueIndex index = new IntValueIndex(new int[]{1, 2, 1, 2, 1});
+        int one = index.group(1);
+
+        assertEquals(index.groupStart(one), index.firstAfter(one, -1));
+        assertEquals(2, index.posting(index.firstAfter(one, 0)));
+        assertEquals(4, index.posting(index.firstAfter(one, 2)));
+        assertEquals(index.groupEnd(one), index.firstAfter(one, 4));
+    }
+
+    @Test
+    public void testManyValues() throws Exception {
+        int[] values = new int[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 31 % 1000 - 500;
+        }
+        IntValueIndex index = new IntValueIndex(values);
+
+        assertEquals(1000, index.groups());
+        for (int g = 0; g < index.groups(); g++) {
+            assertEquals(100, index.count(g));
+            for (int p = index.groupStart(g); p < index.groupEnd(g); p++) {
+                assertEquals(index.value(g), values[index.posting(p)]);
+            }
+        }
+    }
+
+    @Test
+    public void testTableSize() throws Exception {
+        assertEquals(2, IntValueIndex.tableSize(0));
+        assertEquals(2, IntValueIndex.tableSize(1));
+        assertEquals(8, IntValueIndex.tableSize(3));
+        assertEquals(8, IntValueIndex.tableSize(4));
+        assertEquals(1 << 30, IntValueIndex.tableSize(1 << 29));
+        // more than half full, but still with an empty slot
+        assertEquals(1 << 30, IntValueIndex.tableSize((1 << 30) - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTableSize_too_many_values() throws Exception {
+        IntValueIndex.tableSize(1 << 30);
+    }
+}
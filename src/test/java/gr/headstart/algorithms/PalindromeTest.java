@@ -3,6 +3,13 @@ package gr.headstart.algorithms;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 /**
@@ -51,4 +58,109 @@ public class PalindromeTest {
         String s = "1234321";
         assertTrue(palindrome.check(s));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCheck_bytes() throws Exception {
+        assertTrue(palindrome.check("1234321".getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(palindrome.check("1222".getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(palindrome.check(new byte[0]));
+        assertFalse(palindrome.check((byte[]) null));
+    }
+
+    @Test
+    public void testCheck_bytes_all_lengths() throws Exception {
+        Random random = new Random(1);
+        for (int n = 0; n < 70; n++) {
+            byte[] bytes = mirrored(random, n);
+            assertTrue("length " + n, palindrome.check(bytes));
+            for (int i = 0; i < n / 2; i++) {
+                // break each position in turn, the word and the scalar loops must both see it
+                bytes[i]++;
+                assertFalse("length " + n + " position " + i, palindrome.check(bytes));
+                bytes[i]--;
+                bytes[n - 1 - i]++;
+                assertFalse("length " + n + " position " + (n - 1 - i), palindrome.check(bytes));
+                bytes[n - 1 - i]--;
+            }
+        }
+    }
+
+    @Test
+    public void testCheck_buffer() throws Exception {
+        byte[] bytes = "xx123454321yy".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(2).limit(11);
+        assertTrue(palindrome.check(buffer));
+        assertEquals(2, buffer.position());
+        assertTrue(palindrome.check(buffer.order(ByteOrder.LITTLE_ENDIAN)));
+        assertFalse(palindrome.check(ByteBuffer.wrap(bytes)));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(101);
+        direct.put(mirrored(new Random(2), 101)).flip();
+        assertTrue(palindrome.check(direct));
+    }
+
+    @Test
+    public void testCheck_file() throws Exception {
+        Path file = Files.createTempFile("palindrome", ".bin");
+        try {
+            byte[] bytes = mirrored(new Random(3), 10001);
+            Files.write(file, bytes);
+            // small windows so that many of them are mapped
+            assertTrue(new Palindrome(64).check(file));
+            assertTrue(palindrome.check(file));
+
+            bytes[5000 - 1]++;
+            Files.write(file, bytes);
+            assertFalse(new Palindrome(64).check(file));
+            assertFalse(palindrome.check(file));
+        } finally {
+            Files.delete(file);
+        }
+        assertFalse(palindrome.check((Path) null));
+    }
+
+    @Test
+    public void testCheck_code_points() throws Exception {
+        // a grinning face is the surrogate pair D83D DE00
+        String s = "a\uD83D\uDE00b\uD83D\uDE00a";
+        assertFalse(palindrome.check(s));
+        assertTrue(new Palindrome(Palindrome.Option.CODE_POINTS).check(s));
+        assertTrue(new Palindrome(Palindrome.Option.CODE_POINTS).check("\uD83D\uDE00"));
+        assertFalse(new Palindrome(Palindrome.Option.CODE_POINTS).check("\uD83D\uDE00\uD83D\uDE01"));
+    }
+
+    @Test
+    public void testCheck_ignore_case() throws Exception {
+        Palindrome ignoreCase = new Palindrome(Palindrome.Option.IGNORE_CASE);
+        assertTrue(ignoreCase.check("RaceCar"));
+        assertFalse(palindrome.check("RaceCar"));
+        // Greek capital sigma and small final sigma
+        assertTrue(ignoreCase.check("\u03a3a\u03c2"));
+        assertFalse(ignoreCase.check("Racecars"));
+    }
+
+    @Test
+    public void testCheck_alphanumeric_only() throws Exception {
+        Palindrome relaxed = new Palindrome(Palindrome.Option.IGNORE_CASE, Palindrome.Option.ALPHANUMERIC_ONLY);
+        assertTrue(relaxed.check("A man, a plan, a canal: Panama"));
+        assertTrue(relaxed.check("No 'x' in Nixon"));
+        assertTrue(relaxed.check(" .,!? "));
+        assertTrue(relaxed.check(""));
+        assertFalse(relaxed.check("race a car"));
+        assertFalse(new Palindrome(Palindrome.Option.ALPHANUMERIC_ONLY).check("A man, a plan, a canal: Panama"));
+        assertFalse(relaxed.check((String) null));
+
+        Palindrome all = new Palindrome(Palindrome.Option.values());
+        assertTrue(all.check("\uD83D\uDE00Was it a car or a cat I saw?\uD83D\uDE01"));
+    }
+
+    private static byte[] mirrored(Random random, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < (length + 1) / 2; i++) {
+            bytes[i] = (byte) random.nextInt();
+            bytes[length - 1 - i] = bytes[i];
+        }
+        return bytes;
+    }
+}
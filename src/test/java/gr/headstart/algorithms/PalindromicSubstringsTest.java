@@ -0,0 +1,122 @@
+package gr.headstart.algorithms;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PalindromicSubstringsTest {
+
+    private final PalindromicSubstrings palindromicSubstrings = new PalindromicSubstrings();
+
+    @Test
+    public void testAnalyze() throws Exception {
+        PalindromicSubstrings.Result result = palindromicSubstrings.analyze("forgeeksskeegfor");
+        assertEquals("geeksskeeg", result.longest());
+        assertEquals(3, result.longestStart());
+
+        assertEquals("aba", palindromicSubstrings.analyze("xabay").longest());
+        assertEquals(6, palindromicSubstrings.analyze("aaa").count());
+        assertEquals(3, palindromicSubstrings.analyze("abc").count());
+        assertEquals("a", palindromicSubstrings.analyze("abc").longest());
+        assertEquals("", palindromicSubstrings.analyze("").longest());
+        assertEquals(0, palindromicSubstrings.analyze("").count());
+        assertNull(palindromicSubstrings.analyze((String) null));
+    }
+
+    @Test
+    public void testAnalyzeMatchesExpandingAroundCenters() throws Exception {
+        Random random = new Random(13);
+        for (int i = 0; i < 500; i++) {
+            char[] chars = new char[random.nextInt(60)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) ('a' + random.nextInt(3));
+            }
+            String line = new String(chars);
+
+            PalindromicSubstrings.Result result = palindromicSubstrings.analyze(line);
+            assertEquals(line, expandedCount(line), result.count());
+            assertEquals(line, expandedLongest(line), result.longest());
+        }
+    }
+
+    @Test
+    public void testLongLine() throws Exception {
+        char[] chars = new char[200000];
+        Arrays.fill(chars, 'a');
+        PalindromicSubstrings.Result result = palindromicSubstrings.analyze(new String(chars));
+        assertEquals(chars.length, result.longestLength());
+        assertEquals(200000L * 200001 / 2, result.count());
+        // the bigger radius array is reused for a short line
+        assertEquals("aba", palindromicSubstrings.analyze("abab").longest());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        List<String> lines = new ArrayList<>();
+        Random random = new Random(17);
+        for (int i = 0; i < 2000; i++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) ('a' + random.nextInt(2));
+            }
+            lines.add(new String(chars));
+        }
+
+        List<PalindromicSubstrings.Result> results = palindromicSubstrings.analyze(lines.stream())
+                .collect(Collectors.toList());
+        assertEquals(lines.size(), results.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(lines.get(i), results.get(i).line());
+            assertEquals(expandedCount(lines.get(i)), results.get(i).count());
+        }
+
+        Path file = Files.createTempFile("palindromes", ".txt");
+        try {
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            try (Stream<PalindromicSubstrings.Result> fromFile = palindromicSubstrings.analyze(file)) {
+                assertEquals(results.stream().mapToLong(PalindromicSubstrings.Result::count).sum(),
+                        fromFile.mapToLong(PalindromicSubstrings.Result::count).sum());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static long expandedCount(String line) {
+        long count = 0;
+        for (int center = 0; center < 2 * line.length() - 1; center++) {
+            int left = center / 2;
+            int right = left + center % 2;
+            while (left >= 0 && right < line.length() && line.charAt(left) == line.charAt(right)) {
+                count++;
+                left--;
+                right++;
+            }
+        }
+        return count;
+    }
+
+    private static String expandedLongest(String line) {
+        String longest = "";
+        for (int i = 0; i < line.length(); i++) {
+            for (int j = line.length(); j > i + longest.length(); j--) {
+                if (new Palindrome().check(line.substring(i, j))) {
+                    longest = line.substring(i, j);
+                    break;
+                }
+            }
+        }
+        return longest;
+    }
+}
@@ -0,0 +1,87 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PhraseFileGeneratorTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("generated-phrases", ".txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testGroundTruth() throws Exception {
+        PhraseFileGenerator generator = new PhraseFileGenerator(7, 500, 1.0, 1, 30);
+        long[] counts = generator.generate(file, 200000);
+
+        assertTrue(Files.size(file) >= 200000);
+        Map<String, Long> actual = new HashMap<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            String[] phrases = line.split(" \\| ", -1);
+            assertEquals(PhraseFileGenerator.PHRASES_PER_LINE, phrases.length);
+            for (String phrase : phrases) {
+                actual.merge(phrase, 1L, Long::sum);
+            }
+        }
+        for (int rank = 1; rank <= generator.distinctPhrases(); rank++) {
+            assertEquals(counts[rank - 1], (long) actual.getOrDefault(generator.phrase(rank), 0L));
+        }
+        assertEquals(lines.size() * (long) PhraseFileGenerator.PHRASES_PER_LINE, Arrays.stream(counts).sum());
+        // the most frequent phrases come first
+        assertTrue(counts[0] > counts[9] && counts[9] > counts[99]);
+    }
+
+    @Test
+    public void testPhrases() throws Exception {
+        PhraseFileGenerator generator = new PhraseFileGenerator(3, 5000, 0.5, 1, 12);
+        Set<String> phrases = new HashSet<>();
+        for (int rank = 1; rank <= generator.distinctPhrases(); rank++) {
+            String phrase = generator.phrase(rank);
+            assertTrue(phrase.length() <= 12);
+            assertEquals(phrase, phrase.trim());
+            assertFalse(phrase.contains("|"));
+            assertFalse(phrase.contains("  "));
+            phrases.add(phrase);
+        }
+        assertEquals(generator.distinctPhrases(), phrases.size());
+    }
+
+    @Test
+    public void testSameSeedSameFile() throws Exception {
+        long[] counts = new PhraseFileGenerator(11, 100, 1.2, 5, 10).generate(file, 50000);
+        byte[] bytes = Files.readAllBytes(file);
+
+        assertArrayEquals(counts, new PhraseFileGenerator(11, 100, 1.2, 5, 10).generate(file, 50000));
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParameters() throws Exception {
+        new PhraseFileGenerator(1, 10, 1.0, 10, 5);
+    }
+}
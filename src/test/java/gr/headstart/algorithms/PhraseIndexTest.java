@@ -0,0 +1,147 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PhraseIndexTest {
+    Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("phrases", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("Olympics 2012 | Olympics 2016 | PGA | Olympics\n");
+            writer.write("Olympics 2012 | Olympicsx | PGA Tour | CNET\n");
+            writer.write("Olympics 2016 | Olympics 2012 | PGA | Olympics 2016\n");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testTop_by_prefix() throws Exception {
+        PhraseIndex index = new TopPhrases().index(file.toString());
+        Queue<TopPhrases.Phrase> results = index.top("Olympics", 3);
+        assertEquals(3, results.size());
+        // Olympics and Olympicsx both have 1, Olympics is the smaller phrase
+        assertEquals("{Olympics : 1}", results.poll().toString());
+        assertEquals("{Olympics 2016 : 3}", results.poll().toString());
+        assertEquals("{Olympics 2012 : 3}", results.poll().toString());
+
+        results = index.top("Olympics ", 10);
+        assertEquals(2, results.size());
+        assertEquals(0, index.top("Bing", 10).size());
+    }
+
+    @Test
+    public void testTop_empty_prefix_is_find() throws Exception {
+        Random random = new Random(7);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int line = 0; line < 2000; line++) {
+                for (int i = 0; i < 10; i++) {
+                    writer.write((i > 0 ? "|" : "") + "p" + Integer.toString(random.nextInt(300), 7));
+                }
+                writer.write("\n");
+            }
+        }
+
+        PhraseIndex index = new TopPhrases().index(file.toString());
+        Queue<TopPhrases.Phrase> expected = new TopPhrases().find(file.toString(), 50);
+        Queue<TopPhrases.Phrase> results = index.top("", 50);
+        assertEquals(expected.size(), results.size());
+        while (!expected.isEmpty()) {
+            assertEquals(expected.poll().toString(), results.poll().toString());
+        }
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        PhraseIndex index = new TopPhrases().index(file.toString());
+        assertEquals(3, index.count("Olympics 2012"));
+        assertEquals(2, index.count(" PGA "));
+        assertEquals(0, index.count("Olymp"));
+        assertEquals(0, index.count(""));
+        assertEquals(0, index.count("Bing"));
+        assertEquals(7, index.distinct());
+    }
+
+    @Test
+    public void testQueries_are_normalized() throws Exception {
+        StreamingTopPhrases counter = new StreamingTopPhrases(
+                PhraseNormalizer.of(PhraseNormalizer.Option.TRIM, PhraseNormalizer.Option.LOWER_CASE));
+        counter.addLine("PGA | Olympics 2012 | pga");
+        PhraseIndex index = counter.index();
+        assertEquals(2, index.count("Pga "));
+        assertEquals("{olympics 2012 : 1}", index.top("OLYMPICS ", 1).poll().toString());
+
+        // the index is a copy, later counts do not change it
+        counter.addLine("PGA");
+        assertEquals(2, index.count("pga"));
+        assertEquals(3, counter.index().count("pga"));
+    }
+
+    @Test
+    public void testLoad_snapshot() throws Exception {
+        StreamingTopPhrases counter = new StreamingTopPhrases();
+        counter.addLine("PGA|CNET|PGA");
+        Path snapshot = Files.createTempFile("phrases", ".tps");
+        try {
+            counter.save(snapshot);
+            PhraseIndex index = PhraseIndex.load(snapshot, PhraseNormalizer.DEFAULT);
+            assertEquals(2, index.count("PGA"));
+            assertEquals(1, index.count("CNET"));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testConcurrent_readers() throws Exception {
+        PhraseIndex index = new TopPhrases().index(file.toString());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    long sum = 0;
+                    for (int j = 0; j < 1000; j++) {
+                        sum += index.top("Olympics", 2).peek().phraseCount + index.count("PGA");
+                    }
+                    return sum;
+                }));
+            }
+            for (Future<Long> future : futures) {
+                assertEquals(5000, (long) future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalid_input() throws Exception {
+        PhraseIndex index = new TopPhrases().index(file.toString());
+        assertTrue(index.top(null, 3) == null);
+        assertTrue(index.top("PGA", 0) == null);
+        assertEquals(0, index.count(null));
+        assertTrue(new TopPhrases().index("blahblah.txt") == null);
+    }
+}
@@ -0,0 +1,88 @@
+package gr.headstart.algorithms;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PhraseNormalizerTest {
+
+    @Test
+    public void testNormalize_none() throws Exception {
+        assertEquals(" PGA  Tour ", normalize(PhraseNormalizer.NONE, " PGA  Tour "));
+    }
+
+    @Test
+    public void testNormalize_trim() throws Exception {
+        PhraseNormalizer normalizer = PhraseNormalizer.DEFAULT;
+        assertEquals("PGA  Tour", normalize(normalizer, " \tPGA  Tour \r"));
+        assertEquals("", normalize(normalizer, "   "));
+    }
+
+    @Test
+    public void testNormalize_collapse_whitespace_and_lower_case() throws Exception {
+        PhraseNormalizer normalizer = PhraseNormalizer.of(PhraseNormalizer.Option.TRIM,
+                PhraseNormalizer.Option.COLLAPSE_WHITESPACE, PhraseNormalizer.Option.LOWER_CASE);
+        assertEquals("olympics 2012", normalize(normalizer, "  Olympics \t 2012 "));
+        // "OLYMPICS" in greek
+        assertEquals("\u03bf\u03bb\u03c5\u03bc\u03c0\u03b9\u03b1\u03ba\u03bf\u03af",
+                normalize(normalizer, "\u039f\u039b\u03a5\u039c\u03a0\u0399\u0391\u039a\u039f\u038a"));
+    }
+
+    @Test
+    public void testNormalize_nfc() throws Exception {
+        PhraseNormalizer normalizer = PhraseNormalizer.of(PhraseNormalizer.Option.NFC);
+        // "e" with a combining acute accent becomes the precomposed character
+        assertEquals("caf\u00e9", normalize(normalizer, "cafe\u0301"));
+        assertEquals("caf\u00e9", normalize(normalizer, "caf\u00e9"));
+        // characters outside the basic plane survive the round trip
+        assertEquals("\ud83d\ude00 smile", normalize(normalizer, "\ud83d\ude00 smile"));
+    }
+
+    @Test
+    public void testNormalize_invalid_utf8() throws Exception {
+        PhraseNormalizer normalizer = PhraseNormalizer.of(PhraseNormalizer.Option.LOWER_CASE);
+        byte[] bytes = {'A', (byte) 0xC3, 'B'};
+        assertEquals("a\ufffdb", normalize(normalizer, bytes));
+    }
+
+    @Test
+    public void testNormalize_utf8_above_max_code_point() throws Exception {
+        PhraseNormalizer normalizer = PhraseNormalizer.of(PhraseNormalizer.Option.LOWER_CASE,
+                PhraseNormalizer.Option.COLLAPSE_WHITESPACE, PhraseNormalizer.Option.NFC);
+        // 0xF5 is never a lead byte, 0xF4 0x90 0x80 0x80 would be U+110000
+        byte[] bytes = {'A', (byte) 0xF5, (byte) 0x80, (byte) 0x80, (byte) 0x80, 'B',
+                (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80, 'C'};
+        String result = normalize(normalizer, bytes);
+        assertTrue(result.startsWith("a\ufffd"));
+        assertTrue(result.contains("b\ufffd"));
+        assertTrue(result.endsWith("\ufffdc"));
+    }
+
+    private static String normalize(PhraseNormalizer normalizer, String phrase) {
+        return normalize(normalizer, phrase.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String normalize(PhraseNormalizer normalizer, byte[] bytes) {
+        List<String> results = new ArrayList<>();
+        PhraseScanner.PhraseConsumer stage = normalizer.wrap((buffer, from, to) -> {
+            byte[] normalized = new byte[to - from];
+            for (int i = from; i < to; i++) {
+                normalized[i - from] = buffer.get(i);
+            }
+            results.add(new String(normalized, StandardCharsets.UTF_8));
+        });
+        // surround the phrase with other bytes, the stage must respect the window
+        byte[] padded = new byte[bytes.length + 2];
+        padded[0] = 'x';
+        System.arraycopy(bytes, 0, padded, 1, bytes.length);
+        padded[padded.length - 1] = 'x';
+        stage.accept(ByteBuffer.wrap(padded), 1, padded.length - 1);
+        return results.get(0);
+    }
+}
@@ -0,0 +1,105 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PhraseScannerTest {
+    Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("phrases", ".txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testScan_happy() throws Exception {
+        write("Foobar Candy | Olympics 2012 | PGA\nCNET|Microsoft Bing\n");
+        assertEquals(Arrays.asList("Foobar Candy ", " Olympics 2012 ", " PGA", "CNET", "Microsoft Bing"),
+                scan(PhraseScanner.DEFAULT_CHUNK_SIZE));
+    }
+
+    @Test
+    public void testScan_crlf_and_no_trailing_line_break() throws Exception {
+        write("PGA|CNET\r\nOlympics 2012|Bing");
+        assertEquals(Arrays.asList("PGA", "CNET", "Olympics 2012", "Bing"), scan(PhraseScanner.DEFAULT_CHUNK_SIZE));
+    }
+
+    @Test
+    public void testScan_multi_byte_characters() throws Exception {
+        // "good|water" in greek
+        String good = "\u03ba\u03b1\u03bb\u03cc";
+        String water = "\u03bd\u03b5\u03c1\u03cc";
+        write(good + "|" + water + "\n");
+        assertEquals(Arrays.asList(good, water), scan(PhraseScanner.DEFAULT_CHUNK_SIZE));
+    }
+
+    @Test
+    public void testScan_lines_longer_than_chunk() throws Exception {
+        write("a long phrase that does not fit|in a chunk\nshort|x\nanother long line of phrases|y\n");
+        assertEquals(Arrays.asList("a long phrase that does not fit", "in a chunk", "short", "x",
+                "another long line of phrases", "y"), scan(8));
+    }
+
+    @Test
+    public void testScan_counts_lines() throws Exception {
+        byte[] bytes = "PGA|CNET\n\nOlympics 2012|Bing".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        List<String> phrases = new ArrayList<>();
+        assertEquals(3, PhraseScanner.scan(buffer, 0, bytes.length, (b, from, to) -> phrases.add(from + "-" + to)));
+        assertEquals(5, phrases.size());
+    }
+
+    @Test
+    public void testSplit_line_aligned() throws Exception {
+        write("PGA|CNET\nOlympics 2012|Bing\nFoobar Candy\nx\n");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] boundaries = PhraseScanner.split(channel, 4);
+            assertEquals(5, boundaries.length);
+            assertEquals(0, boundaries[0]);
+            assertEquals(channel.size(), boundaries[4]);
+            for (int i = 1; i < 4; i++) {
+                assertTrue(boundaries[i] >= boundaries[i - 1]);
+                assertTrue(boundaries[i] == channel.size() || boundaries[i] == 0
+                        || Files.readAllBytes(file)[(int) boundaries[i] - 1] == '\n');
+            }
+        }
+    }
+
+    private void write(String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> scan(int chunkSize) throws Exception {
+        List<String> phrases = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            PhraseScanner.scan(channel, 0, channel.size(), chunkSize, (buffer, from, to) -> {
+                byte[] bytes = new byte[to - from];
+                for (int i = from; i < to; i++) {
+                    bytes[i - from] = buffer.get(i);
+                }
+                phrases.add(new String(bytes, StandardCharsets.UTF_8));
+            });
+        }
+        return phrases;
+    }
+}
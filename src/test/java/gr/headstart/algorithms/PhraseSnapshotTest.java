@@ -0,0 +1,152 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PhraseSnapshotTest {
+    // "good" in greek, sorted after the latin phrases since its bytes are > 0x7F
+    private static final String GOOD = "\u03ba\u03b1\u03bb\u03cc";
+
+    Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("snapshots");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testWrite_and_load() throws Exception {
+        PhraseTrie trie = trie("PGA", "PGA", "PGAr", "CNET", "Foobar Candy", "Foobar", GOOD);
+        Path snapshot = directory.resolve("snapshot");
+        PhraseSnapshot.write(trie, snapshot);
+
+        PhraseTrie loaded = new PhraseTrie();
+        PhraseSnapshot.load(snapshot, loaded);
+        assertEquals(entries(trie), entries(loaded));
+        assertEquals(Arrays.asList("CNET=1", "Foobar=1", "Foobar Candy=1", "PGA=2", "PGAr=1",
+                GOOD + "=1"), entries(loaded));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        Path first = directory.resolve("first");
+        Path second = directory.resolve("second");
+        Path merged = directory.resolve("merged");
+        PhraseSnapshot.write(trie("PGA", "PGA", "CNET", "Bing"), first);
+        PhraseSnapshot.write(trie("PGA", "Bingo", "Olympics 2012"), second);
+
+        PhraseSnapshot.merge(Arrays.asList(first, second), merged);
+        PhraseTrie loaded = new PhraseTrie();
+        PhraseSnapshot.load(merged, loaded);
+        assertEquals(Arrays.asList("Bing=1", "Bingo=1", "CNET=1", "Olympics 2012=1", "PGA=3"), entries(loaded));
+
+        Queue<TopPhrases.Phrase> top = PhraseSnapshot.top(merged, 1);
+        TopPhrases.Phrase pga = top.poll();
+        assertEquals("PGA", pga.phrase);
+        assertEquals(3, pga.phraseCount);
+    }
+
+    @Test
+    public void testMerge_into_an_input() throws Exception {
+        Path daily = directory.resolve("daily");
+        Path hour = directory.resolve("hour");
+        PhraseSnapshot.write(trie("PGA", "PGA", "CNET"), daily);
+        PhraseSnapshot.write(trie("PGA", "Bing"), hour);
+
+        PhraseSnapshot.merge(Arrays.asList(daily, hour), daily);
+        PhraseTrie loaded = new PhraseTrie();
+        PhraseSnapshot.load(daily, loaded);
+        assertEquals(Arrays.asList("Bing=1", "CNET=1", "PGA=3"), entries(loaded));
+        // only the snapshots are left, no temporary files
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void testMerge_missing_input_keeps_output() throws Exception {
+        Path daily = directory.resolve("daily");
+        PhraseSnapshot.write(trie("PGA"), daily);
+        try {
+            PhraseSnapshot.merge(Arrays.asList(daily, directory.resolve("missing")), daily);
+            fail();
+        } catch (IOException expected) {
+            // expected
+        }
+        PhraseTrie loaded = new PhraseTrie();
+        PhraseSnapshot.load(daily, loaded);
+        assertEquals(Arrays.asList("PGA=1"), entries(loaded));
+    }
+
+    @Test
+    public void testLoad_not_a_snapshot() throws Exception {
+        Path file = directory.resolve("text");
+        Files.write(file, "PGA|CNET\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            PhraseSnapshot.load(file, new PhraseTrie());
+            fail();
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriter_rejects_unsorted_phrases() throws Exception {
+        try (PhraseSnapshot.Writer writer = new PhraseSnapshot.Writer(directory.resolve("unsorted"))) {
+            writer.write(bytes("PGA"), 3, 1);
+            writer.write(bytes("CNET"), 4, 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        // the writer was not committed, nothing is left behind
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private static PhraseTrie trie(String... phrases) {
+        PhraseTrie trie = new PhraseTrie();
+        for (String phrase : phrases) {
+            byte[] bytes = bytes(phrase);
+            trie.add(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+        return trie;
+    }
+
+    private static byte[] bytes(String phrase) {
+        return phrase.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> entries(PhraseTrie trie) {
+        List<String> entries = new ArrayList<>();
+        trie.forEachSorted((node, phrase, length, count) ->
+                entries.add(new String(phrase, 0, length, StandardCharsets.UTF_8) + "=" + count));
+        return entries;
+    }
+}
@@ -0,0 +1,101 @@
+package gr.headstart.algorithms;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class PhraseTrieTest {
+    // "good" in greek, two bytes per character in UTF-8
+    private static final String GOOD = "\u03ba\u03b1\u03bb\u03cc";
+
+    PhraseTrie trie;
+
+    @Before
+    public void setUp() throws Exception {
+        trie = new PhraseTrie(16);
+    }
+
+    @Test
+    public void testAdd_happy() throws Exception {
+        add(trie, "PGA");
+        add(trie, "PGA");
+        add(trie, "PGAr");
+        add(trie, "CNET");
+
+        assertEquals(2, count(trie, "PGA"));
+        assertEquals(1, count(trie, "PGAr"));
+        assertEquals(1, count(trie, "CNET"));
+        assertEquals(0, count(trie, "PG"));
+        assertEquals(0, count(trie, "Bing"));
+        assertEquals("PGAr", trie.phrase(find(trie, "PGAr")));
+    }
+
+    @Test
+    public void testAdd_empty_phrase() throws Exception {
+        add(trie, "");
+        assertEquals(1, trie.size());
+    }
+
+    @Test
+    public void testAdd_grows() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            add(trie, "phrase " + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(1, count(trie, "phrase " + i));
+            assertEquals("phrase " + i, trie.phrase(find(trie, "phrase " + i)));
+        }
+    }
+
+    @Test
+    public void testAdd_every_byte() throws Exception {
+        // the byte is packed with the parent and the child in the edge table, the high ones must not spill over
+        for (int b = 0; b < 256; b++) {
+            trie.add(ByteBuffer.wrap(new byte[]{(byte) b, (byte) (255 - b)}), 0, 2);
+        }
+        for (int b = 0; b < 256; b++) {
+            ByteBuffer phrase = ByteBuffer.wrap(new byte[]{(byte) b, (byte) (255 - b)});
+            assertEquals(1, trie.count(trie.find(phrase, 0, 2)));
+            assertEquals(PhraseTrie.NO_NODE, trie.find(ByteBuffer.wrap(new byte[]{(byte) b, (byte) b}), 0, 2));
+        }
+        assertEquals(513, trie.size());
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        PhraseTrie other = new PhraseTrie();
+        add(trie, "Foobar Candy");
+        add(trie, "PGA");
+        add(other, "Foobar Candy");
+        add(other, "Foobar");
+        add(other, GOOD);
+
+        assertEquals(2, trie.distinct());
+        trie.merge(other);
+        assertEquals(4, trie.distinct());
+        assertEquals(2, count(trie, "Foobar Candy"));
+        assertEquals(1, count(trie, "Foobar"));
+        assertEquals(1, count(trie, "PGA"));
+        assertEquals(1, count(trie, GOOD));
+        assertEquals(GOOD, trie.phrase(find(trie, GOOD)));
+    }
+
+    private static void add(PhraseTrie trie, String phrase) {
+        byte[] bytes = phrase.getBytes(StandardCharsets.UTF_8);
+        trie.add(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static int find(PhraseTrie trie, String phrase) {
+        byte[] bytes = phrase.getBytes(StandardCharsets.UTF_8);
+        return trie.find(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static long count(PhraseTrie trie, String phrase) {
+        int node = find(trie, phrase);
+        return node == PhraseTrie.NO_NODE ? 0 : trie.count(node);
+    }
+}
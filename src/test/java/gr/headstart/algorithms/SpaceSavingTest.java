@@ -0,0 +1,79 @@
+package gr.headstart.algorithms;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void testAdd_exact_when_capacity_is_enough() throws Exception {
+        SpaceSaving spaceSaving = new SpaceSaving(10);
+        add(spaceSaving, "PGA");
+        add(spaceSaving, "CNET");
+        add(spaceSaving, "PGA");
+
+        Queue<TopPhrases.Phrase> results = spaceSaving.top(2);
+        TopPhrases.Phrase cnet = results.poll();
+        TopPhrases.Phrase pga = results.poll();
+        assertEquals("CNET", cnet.phrase);
+        assertEquals(1, cnet.phraseCount);
+        assertEquals("PGA", pga.phrase);
+        assertEquals(2, pga.phraseCount);
+        assertEquals(0, pga.error);
+    }
+
+    @Test
+    public void testAdd_error_bounds() throws Exception {
+        SpaceSaving spaceSaving = new SpaceSaving(50);
+        Map<String, Long> exactCounts = new HashMap<>();
+        Random random = new Random(7);
+        int total = 20000;
+        for (int i = 0; i < total; i++) {
+            // a few frequent phrases and a long tail of rare ones
+            String phrase = "phrase " + (random.nextBoolean() ? random.nextInt(10) : random.nextInt(5000));
+            add(spaceSaving, phrase);
+            exactCounts.merge(phrase, 1L, Long::sum);
+        }
+
+        for (TopPhrases.Phrase phrase : spaceSaving.top(50)) {
+            long exact = exactCounts.get(phrase.phrase);
+            assertTrue(phrase.phraseCount >= exact);
+            assertTrue(phrase.phraseCount - phrase.error <= exact);
+            assertTrue(phrase.error <= total / 50);
+        }
+
+        // every phrase that occurs more than total / capacity times must be monitored
+        Queue<TopPhrases.Phrase> top = spaceSaving.top(10);
+        for (TopPhrases.Phrase phrase : top) {
+            assertTrue(phrase.phrase.matches("phrase \\d"));
+        }
+    }
+
+    @Test
+    public void testTableSize() throws Exception {
+        assertEquals(4, SpaceSaving.tableSize(1));
+        assertEquals(16, SpaceSaving.tableSize(5));
+        assertEquals(1 << 30, SpaceSaving.tableSize((1 << 28) + 1));
+        // 2^29 << 2 does not fit in an int, the table is capped and still half full
+        assertEquals(1 << 30, SpaceSaving.tableSize(SpaceSaving.MAX_CAPACITY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacity_too_large() throws Exception {
+        new SpaceSaving(SpaceSaving.MAX_CAPACITY + 1);
+    }
+
+    private static void add(SpaceSaving spaceSaving, String phrase) {
+        byte[] bytes = phrase.getBytes(StandardCharsets.UTF_8);
+        spaceSaving.add(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
@@ -0,0 +1,73 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingTopPhrasesTest {
+    StreamingTopPhrases streamingTopPhrases;
+    Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        streamingTopPhrases = new StreamingTopPhrases();
+        file = Files.createTempFile("phrases", ".log");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testTop_can_be_asked_many_times() throws Exception {
+        streamingTopPhrases.addLine("PGA|CNET|PGA");
+        assertEquals(2, streamingTopPhrases.top(1).poll().phraseCount);
+        assertEquals(2, streamingTopPhrases.top(1).poll().phraseCount);
+
+        streamingTopPhrases.addLine("CNET|CNET");
+        TopPhrases.Phrase top = streamingTopPhrases.top(1).poll();
+        assertEquals("CNET", top.phrase);
+        assertEquals(3, top.phraseCount);
+    }
+
+    @Test
+    public void testTail_counts_only_complete_lines() throws Exception {
+        append("PGA|CNET\nPGA|Bi");
+        long offset = streamingTopPhrases.tail(file, 0);
+        assertEquals(9, offset);
+
+        append("ng\nBing|Bing\n");
+        offset = streamingTopPhrases.tail(file, offset);
+        assertEquals(Files.size(file), offset);
+
+        Queue<TopPhrases.Phrase> results = streamingTopPhrases.top(2);
+        assertEquals(2, results.size());
+        assertEquals(2, results.poll().phraseCount);
+        TopPhrases.Phrase bing = results.poll();
+        assertEquals("Bing", bing.phrase);
+        assertEquals(3, bing.phraseCount);
+
+        // nothing new, nothing changes
+        assertEquals(offset, streamingTopPhrases.tail(file, offset));
+        assertEquals(3, streamingTopPhrases.top(1).poll().phraseCount);
+    }
+
+    @Test
+    public void testTop_invalid_top_elements() throws Exception {
+        assertTrue(streamingTopPhrases.top(0) == null);
+    }
+
+    private void append(String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,92 @@
+package gr.headstart.algorithms;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopKSelectorTest {
+
+    @Test
+    public void testSelect_ties_are_broken_by_phrase() throws Exception {
+        PhraseTrie trie = trie("PGA", "CNET", "Bing", "Bingo", "PGA", "Bing");
+        // PGA and Bing have 2 and Bing is the best of the two, then Bingo comes before CNET
+        assertEquals(list("{Bingo : 1}", "{PGA : 2}", "{Bing : 2}"), list(TopKSelector.select(trie, 3).toQueue()));
+    }
+
+    @Test
+    public void testSelect_same_as_sorting() throws Exception {
+        Random random = new Random(11);
+        String[] phrases = new String[100000];
+        for (int i = 0; i < phrases.length; i++) {
+            phrases[i] = "phrase " + random.nextInt(1 + random.nextInt(50000));
+        }
+        PhraseTrie trie = trie(phrases);
+
+        List<TopPhrases.Phrase> all = new ArrayList<>();
+        for (int node = 1; node < trie.size(); node++) {
+            if (trie.count(node) > 0) {
+                all.add(new TopPhrases.Phrase(trie.count(node), trie.phrase(node)));
+            }
+        }
+        Collections.sort(all);
+        List<String> expected = new ArrayList<>();
+        for (TopPhrases.Phrase phrase : all.subList(all.size() - 1000, all.size())) {
+            expected.add(phrase.toString());
+        }
+
+        assertEquals(expected, list(TopKSelector.select(trie, 1000).toQueue()));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, list(TopKSelector.select(trie, 1000, pool).toQueue()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompare_by_bytes() throws Exception {
+        PhraseTrie trie = trie("Bing", "Bingo", "CNET", "\u03ba");
+        assertEquals(-1, trie.compare(node(trie, "Bing"), node(trie, "Bingo")));
+        assertEquals(1, trie.compare(node(trie, "CNET"), node(trie, "Bingo")));
+        assertEquals(-1, trie.compare(node(trie, "CNET"), node(trie, "\u03ba")));
+        assertEquals(0, trie.compare(node(trie, "CNET"), node(trie, "CNET")));
+    }
+
+    private static PhraseTrie trie(String... phrases) {
+        PhraseTrie trie = new PhraseTrie();
+        for (String phrase : phrases) {
+            byte[] bytes = phrase.getBytes(StandardCharsets.UTF_8);
+            trie.add(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+        return trie;
+    }
+
+    private static int node(PhraseTrie trie, String phrase) {
+        byte[] bytes = phrase.getBytes(StandardCharsets.UTF_8);
+        return trie.find(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static List<String> list(String... phrases) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, phrases);
+        return list;
+    }
+
+    // from the worst to the best
+    private static List<String> list(Queue<TopPhrases.Phrase> results) {
+        List<String> list = new ArrayList<>();
+        while (!results.isEmpty()) {
+            list.add(results.poll().toString());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,164 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TopPhrasesCoordinatorTest {
+    List<Path> files = new ArrayList<>();
+    List<PhraseCountWorker> workers = new ArrayList<>();
+    List<InetSocketAddress> addresses = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        Path all = Files.createTempFile("all-phrases", ".txt");
+        files.add(all);
+        // every host sees the same popular phrases, but in a different mix
+        Random random = new Random(11);
+        PhraseFileGenerator generator = new PhraseFileGenerator(3, 2000, 1.1, 1, 20);
+        for (int host = 0; host < 3; host++) {
+            Path shard = Files.createTempFile("shard", ".txt");
+            files.add(shard);
+            generator.generate(shard, 100000);
+            try (BufferedWriter writer = Files.newBufferedWriter(shard, StandardOpenOption.APPEND)) {
+                for (int i = 0; i < 2000; i++) {
+                    writer.write("host" + host + " phrase " + random.nextInt(50) + "\n");
+                }
+            }
+            Files.write(all, Files.readAllBytes(shard), StandardOpenOption.APPEND);
+
+            PhraseCountWorker worker = new PhraseCountWorker();
+            worker.count(shard);
+            workers.add(worker);
+            addresses.add(worker.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (PhraseCountWorker worker : workers) {
+            worker.close();
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testFind_same_as_single_file() throws Exception {
+        TopPhrasesCoordinator coordinator = new TopPhrasesCoordinator(addresses);
+        for (int k : new int[]{1, 10, 100}) {
+            Queue<TopPhrases.Phrase> expected = new TopPhrases().find(files.get(0).toString(), k);
+            Queue<TopPhrases.Phrase> results = coordinator.find(k);
+            assertEquals(expected.size(), results.size());
+            while (!expected.isEmpty()) {
+                assertEquals(expected.poll().toString(), results.poll().toString());
+            }
+        }
+
+        // the coordinator did not get every distinct phrase of every worker
+        long distinct = 0;
+        for (PhraseCountWorker worker : workers) {
+            distinct += worker.distinct();
+        }
+        assertTrue(coordinator.phrasesReceived() * 2 < distinct);
+    }
+
+    @Test
+    public void testFind_more_than_all_phrases() throws Exception {
+        Queue<TopPhrases.Phrase> expected = new TopPhrases().find(files.get(0).toString(), 100000);
+        Queue<TopPhrases.Phrase> results = new TopPhrasesCoordinator(addresses).find(100000);
+        assertEquals(expected.size(), results.size());
+        assertEquals(expected.poll().toString(), results.poll().toString());
+    }
+
+    @Test
+    public void testFind_invalid_input() throws Exception {
+        assertTrue(new TopPhrasesCoordinator(addresses).find(0) == null);
+        assertTrue(new TopPhrasesCoordinator(Collections.emptyList()).find(3) == null);
+    }
+
+    @Test
+    public void testFind_after_a_corrupted_request() throws Exception {
+        // a size this big must not be allocated before the phrases arrive
+        InetSocketAddress address = addresses.get(0);
+        try (Socket socket = new Socket(address.getAddress(), address.getPort());
+             DataOutputStream output = new DataOutputStream(socket.getOutputStream())) {
+            output.writeByte(PhraseCountProtocol.COUNTS);
+            output.writeInt(Integer.MAX_VALUE);
+            output.flush();
+        }
+
+        Queue<TopPhrases.Phrase> expected = new TopPhrases().find(files.get(0).toString(), 10);
+        Queue<TopPhrases.Phrase> results = new TopPhrasesCoordinator(addresses).find(10);
+        assertEquals(expected.poll().toString(), results.poll().toString());
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void testFind_worker_that_does_not_answer() throws Exception {
+        // the connection is taken by the backlog of the socket, but nothing is ever read or written
+        try (ServerSocket silent = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            List<InetSocketAddress> withSilent = new ArrayList<>(addresses);
+            withSilent.add((InetSocketAddress) silent.getLocalSocketAddress());
+            new TopPhrasesCoordinator(withSilent, 1000, 200).find(10);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testClose_when_all_sessions_are_busy() throws Exception {
+        InetSocketAddress address = addresses.get(0);
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < PhraseCountWorker.MAX_SESSIONS; i++) {
+                Socket socket = new Socket(address.getAddress(), address.getPort());
+                sockets.add(socket);
+                // wait for the answer, so that the session holds its thread
+                DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+                output.writeByte(PhraseCountProtocol.TOP);
+                output.writeInt(0);
+                output.flush();
+                assertEquals(0, new DataInputStream(socket.getInputStream()).readInt());
+            }
+
+            // the acceptor waits for a session to end, closing the worker must stop it anyway
+            long acceptors = acceptors();
+            workers.get(0).close();
+            assertEquals(acceptors - 1, acceptors());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCount_after_start() throws Exception {
+        workers.get(0).count(files.get(1));
+    }
+
+    private static long acceptors() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("phrase-count-worker") && thread.isAlive())
+                .count();
+    }
+}
@@ -0,0 +1,106 @@
+package gr.headstart.algorithms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TopPhrasesMetricsTest {
+
+    private Path file;
+    private long[] counts;
+    private long lines;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("metrics", ".txt");
+        counts = new PhraseFileGenerator(5, 2000, 1.0, 3, 20).generate(file, 300000);
+        lines = Arrays.stream(counts).sum() / PhraseFileGenerator.PHRASES_PER_LINE;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        TopPhrasesMetrics metrics = new TopPhrasesMetrics();
+        assertEquals("IDLE", metrics.getPhase());
+
+        new TopPhrases(PhraseNormalizer.DEFAULT, metrics).find(file.toString(), 10);
+
+        assertEquals("DONE", metrics.getPhase());
+        assertCounts(metrics);
+        assertTrue(metrics.getTrieNodes() > metrics.getDistinctPhrases());
+        assertTrue(metrics.getTrieMemoryBytes() > 0);
+        assertEquals(0, metrics.getCountMillis());
+        assertTrue(metrics.getScanMillis() + metrics.getSelectMillis() <= metrics.getElapsedMillis() + 1);
+    }
+
+    @Test
+    public void testFindParallel() throws Exception {
+        TopPhrasesMetrics metrics = new TopPhrasesMetrics();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new TopPhrases(PhraseNormalizer.DEFAULT, metrics).findParallel(file.toString(), 10, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertCounts(metrics);
+    }
+
+    @Test
+    public void testFindExternal() throws Exception {
+        TopPhrasesMetrics metrics = new TopPhrasesMetrics();
+        TopPhrases topPhrases = new TopPhrases(PhraseNormalizer.DEFAULT, metrics);
+        topPhrases.findExternal(file.toString(), 10, 1024 * 1024);
+
+        assertEquals(Files.size(file), metrics.getBytesRead());
+        assertEquals(lines, metrics.getLines());
+        // the trie of the last partition
+        assertTrue(metrics.getDistinctPhrases() > 0);
+
+        // the next run starts from zero
+        topPhrases.findApproximate(file.toString(), 10, 0.01);
+        assertEquals(Files.size(file), metrics.getBytesRead());
+        assertEquals(0, metrics.getCountMillis());
+    }
+
+    @Test
+    public void testMBeanAndLogging() throws Exception {
+        TopPhrasesMetrics metrics = new TopPhrasesMetrics();
+        metrics.register("test");
+        metrics.startLogging(10, TimeUnit.MILLISECONDS);
+        try {
+            new TopPhrases(PhraseNormalizer.DEFAULT, metrics).find(file.toString(), 10);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("gr.headstart.algorithms:type=TopPhrases,name=\"test\"");
+            assertEquals(Files.size(file), server.getAttribute(name, "BytesRead"));
+            assertEquals("DONE", server.getAttribute(name, "Phase"));
+        } finally {
+            metrics.stopLogging();
+            metrics.unregister();
+        }
+    }
+
+    private void assertCounts(TopPhrasesMetrics metrics) throws Exception {
+        assertEquals(Files.size(file), metrics.getBytesRead());
+        assertEquals(lines, metrics.getLines());
+        assertEquals(Arrays.stream(counts).sum(), metrics.getPhrases());
+        assertEquals(Arrays.stream(counts).filter(count -> count > 0).count(), metrics.getDistinctPhrases());
+        assertTrue(metrics.getBytesPerSecond() > 0);
+    }
+}
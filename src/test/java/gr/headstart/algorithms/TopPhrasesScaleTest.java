@@ -0,0 +1,179 @@
+package gr.headstart.algorithms;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Runs TopPhrases end to end on a generated file and checks the results against the ground truth of the
+ * generator. By default the file is small so that the test runs with the rest, for the real sizes run it
+ * alone with a larger heap and the system properties, for example
+ *
+ *   mvn test -Dtest=TopPhrasesScaleTest -Dscale.megabytes=10240 -Dscale.distinct=10000000 -DargLine=-Xmx8g
+ *
+ * scale.megabytes  the size of the file, 2 by default
+ * scale.distinct   the number of distinct phrases, 20000 by default
+ * scale.skew       the Zipf skew, 1.1 by default
+ * scale.minLength  the minimum length of a phrase, 3 by default
+ * scale.maxLength  the maximum length of a phrase, 40 by default
+ * scale.top        the number of top phrases, 100 by default
+ * scale.seed       the seed, 42 by default
+ * scale.modes      the modes to run out of find, parallel, external and approximate, all but approximate by default
+ * scale.budget     the memory budget of the external mode in MB, 64 by default
+ * scale.directory  the directory of the file, the temporary directory by default
+ * scale.keep       true to keep the file, and the counts of its phrases next to it, for the next runs with
+ *                  the same parameters, which use them instead of generating the file again
+ *
+ * The wall time, the throughput and the peak heap of each mode are logged.
+ */
+public class TopPhrasesScaleTest {
+    private final static Logger logger = Logger.getLogger(TopPhrasesScaleTest.class.getName());
+
+    @Test
+    public void testScale() throws Exception {
+        long megabytes = Long.getLong("scale.megabytes", 2);
+        int distinct = Integer.getInteger("scale.distinct", 20000);
+        double skew = Double.parseDouble(System.getProperty("scale.skew", "1.1"));
+        int minLength = Integer.getInteger("scale.minLength", 3);
+        int maxLength = Integer.getInteger("scale.maxLength", 40);
+        int top = Integer.getInteger("scale.top", 100);
+        long seed = Long.getLong("scale.seed", 42);
+        List<String> modes = Arrays.asList(System.getProperty("scale.modes", "find,parallel,external").split(","));
+        long budget = Long.getLong("scale.budget", 64) * 1024 * 1024;
+        Path directory = Paths.get(System.getProperty("scale.directory", System.getProperty("java.io.tmpdir")));
+        boolean keep = Boolean.getBoolean("scale.keep");
+
+        Path file = directory.resolve("scale-" + megabytes + "mb-" + distinct + "-" + skew + "-" + minLength + "-"
+                + maxLength + "-" + seed + ".txt");
+        // the ground truth of a kept file, the generator can not tell it without writing the file again
+        Path countsFile = Paths.get(file + ".counts");
+        PhraseFileGenerator generator = new PhraseFileGenerator(seed, distinct, skew, minLength, maxLength);
+        long start = System.nanoTime();
+        long[] counts;
+        if (keep && Files.exists(file) && Files.exists(countsFile)) {
+            counts = readCounts(countsFile);
+            logger.info("Using the kept " + file);
+        } else {
+            counts = generator.generate(file, megabytes * 1024 * 1024);
+            log("generate", start, Files.size(file), 0);
+            if (keep) {
+                writeCounts(countsFile, counts);
+            }
+        }
+
+        try {
+            Map<String, Function<String, Queue<TopPhrases.Phrase>>> runs = new HashMap<>();
+            TopPhrases topPhrases = new TopPhrases();
+            runs.put("find", path -> topPhrases.find(path, top));
+            runs.put("parallel", path -> topPhrases.findParallel(path, top));
+            runs.put("external", path -> topPhrases.findExternal(path, top, budget, directory));
+            runs.put("approximate", path -> topPhrases.findApproximate(path, top, 1.0 / (10 * top)));
+
+            for (String mode : modes) {
+                System.gc();
+                resetPeakHeap();
+                start = System.nanoTime();
+                Queue<TopPhrases.Phrase> result = runs.get(mode.trim()).apply(file.toString());
+                log(mode, start, Files.size(file), peakHeap());
+
+                assertNotNull(result);
+                if (!"approximate".equals(mode.trim())) {
+                    check(generator, counts, result, top);
+                }
+            }
+        } finally {
+            if (!keep) {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(countsFile);
+            }
+        }
+    }
+
+    // the phrases have their true counts and these are the highest counts, whatever the order of the ties
+    private static void check(PhraseFileGenerator generator, long[] counts, Queue<TopPhrases.Phrase> result, int top) {
+        Map<String, Long> truth = new HashMap<>();
+        for (int rank = 1; rank <= counts.length; rank++) {
+            if (counts[rank - 1] > 0) {
+                truth.put(generator.phrase(rank), counts[rank - 1]);
+            }
+        }
+
+        long[] expected = Arrays.stream(counts).filter(count -> count > 0).map(count -> -count).sorted()
+                .limit(top).map(count -> -count).toArray();
+        List<Long> actual = new ArrayList<>();
+        for (TopPhrases.Phrase phrase : result) {
+            assertEquals(phrase.phrase, truth.get(phrase.phrase), Long.valueOf(phrase.phraseCount));
+            actual.add(phrase.phraseCount);
+        }
+        actual.sort((a, b) -> Long.compare(b, a));
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], (long) actual.get(i));
+        }
+    }
+
+    private static void writeCounts(Path file, long[] counts) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(counts.length);
+            for (long count : counts) {
+                output.writeLong(count);
+            }
+        }
+    }
+
+    private static long[] readCounts(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long[] counts = new long[input.readInt()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = input.readLong();
+            }
+            return counts;
+        }
+    }
+
+    private static void log(String mode, long start, long bytes, long peakHeap) {
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        logger.info(mode + ": " + millis + "ms, " + (bytes / 1024 * 1000 / 1024 / millis) + "MB/s"
+                + (peakHeap > 0 ? ", peak heap " + peakHeap / 1024 / 1024 + "MB" : ""));
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // the sum of the peaks of the heap pools, which may not all be reached at the same time
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -1,13 +1,24 @@
 package gr.headstart.algorithms;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.BufferedWriter;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 import java.util.logging.Logger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -17,11 +28,12 @@ import static org.junit.Assert.assertTrue;
 public class TopPhrasesTest {
     private final static Logger logger = Logger.getLogger(TopPhrasesTest.class.getName());
     TopPhrases topPhrases;
+    Path testFile;
 
     @Before
     public void setUp() throws Exception {
-        String file = "test.txt";
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(file))) {
+        testFile = Files.createTempFile("test", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(testFile)) {
             writer.write("Foobar Candy | Olympics 2012 | PGAr | CNETx | Microsoft Bingw \n");
             writer.write("Foobar Candy | Olympicsb 2012 | PGA | CNET3 | Microsoft Bingx \n");
             writer.write("Foobara Candy | Olympics 2012 | PGAd | CNETt | Microsoft Bingd \n");
@@ -32,9 +44,14 @@ public class TopPhrasesTest {
         topPhrases = new TopPhrases();
     }
 
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(testFile);
+    }
+
     @Test
     public void testInsertToTrie_happy_path() throws Exception {
-        Queue<TopPhrases.Phrase> results = topPhrases.find("test.txt", 3);
+        Queue<TopPhrases.Phrase> results = topPhrases.find(testFile.toString(), 3);
         logger.info("Results: " + results);
         assertTrue(results.size() == 3);
         assertTrue(results.poll().phraseCount == 2); // result { CNETx  : 2}
@@ -42,6 +59,15 @@ public class TopPhrasesTest {
         assertTrue(results.poll().phraseCount == 4); // result {Foobar Candy  : 4}
     }
 
+    @Test
+    public void testFind_phrases_are_trimmed() throws Exception {
+        Queue<TopPhrases.Phrase> results = topPhrases.find(testFile.toString(), 1);
+        assertEquals("Foobar Candy", results.poll().phrase);
+
+        results = new TopPhrases(PhraseNormalizer.NONE).find(testFile.toString(), 1);
+        assertEquals("Foobar Candy ", results.poll().phrase);
+    }
+
     @Test
     public void testInsertToTrie_invalid_file() throws Exception {
         Queue<TopPhrases.Phrase> results = topPhrases.find("blahblah.txt", 3);
@@ -51,8 +77,183 @@ public class TopPhrasesTest {
 
     @Test
     public void testInsertToTrie_invalid_top_elements() throws Exception {
-        Queue<TopPhrases.Phrase> results = topPhrases.find("test.txt", 0);
+        Queue<TopPhrases.Phrase> results = topPhrases.find(testFile.toString(), 0);
+        logger.info("Results: " + results);
+        assertTrue(results == null);
+    }
+
+    @Test
+    public void testFindParallel_happy_path() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Queue<TopPhrases.Phrase> results;
+        try {
+            results = topPhrases.findParallel(testFile.toString(), 3, pool);
+        } finally {
+            pool.shutdown();
+        }
         logger.info("Results: " + results);
+        assertTrue(results.size() == 3);
+        assertTrue(results.poll().phraseCount == 2);
+        assertTrue(results.poll().phraseCount == 3);
+        assertTrue(results.poll().phraseCount == 4);
+    }
+
+    @Test
+    public void testFindParallel_same_as_find() throws Exception {
+        Path file = Files.createTempFile("phrases", ".txt");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            writeRandomPhrases(file);
+            List<Long> expected = counts(new TopPhrases().find(file.toString(), 100));
+            List<Long> actual = counts(new TopPhrases().findParallel(file.toString(), 100, pool));
+            assertEquals(expected, actual);
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFindParallel_invalid_file() throws Exception {
+        Queue<TopPhrases.Phrase> results = topPhrases.findParallel("blahblah.txt", 3);
         assertTrue(results == null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFindExternal_same_as_find() throws Exception {
+        Path file = Files.createTempFile("phrases", ".txt");
+        Path tempDirectory = Files.createTempDirectory("partitions");
+        try {
+            writeRandomPhrases(file);
+            List<Long> expected = counts(new TopPhrases().find(file.toString(), 100));
+            // a budget this small needs many partitions
+            List<Long> actual = counts(new TopPhrases().findExternal(file.toString(), 100, 1024 * 1024, tempDirectory));
+            assertEquals(expected, actual);
+
+            try (Stream<Path> left = Files.list(tempDirectory)) {
+                assertEquals(0, left.count());
+            }
+        } finally {
+            Files.delete(file);
+            Files.delete(tempDirectory);
+        }
+    }
+
+    @Test
+    public void testFindExternal_more_partitions_than_can_be_open() throws Exception {
+        Path file = Files.createTempFile("phrases", ".txt");
+        Path tempDirectory = Files.createTempDirectory("partitions");
+        try {
+            writeRandomPhrases(file);
+            // the budget needs more than SpillPartitions.MAX_FAN_OUT partitions, so they are split again
+            assertTrue(Files.size(file) * PhraseTrie.BYTES_PER_NODE / (64 * 1024) > SpillPartitions.MAX_FAN_OUT);
+            List<Long> expected = counts(new TopPhrases().find(file.toString(), 100));
+            List<Long> actual = counts(new TopPhrases().findExternal(file.toString(), 100, 64 * 1024, tempDirectory));
+            assertEquals(expected, actual);
+
+            try (Stream<Path> left = Files.list(tempDirectory)) {
+                assertEquals(0, left.count());
+            }
+        } finally {
+            Files.delete(file);
+            Files.delete(tempDirectory);
+        }
+    }
+
+    @Test
+    public void testFindExternal_invalid_memory_budget() throws Exception {
+        Queue<TopPhrases.Phrase> results = topPhrases.findExternal(testFile.toString(), 3, 0);
+        assertTrue(results == null);
+    }
+
+    @Test
+    public void testFindApproximate_recall_and_precision() throws Exception {
+        Path file = Files.createTempFile("zipf", ".txt");
+        try {
+            writeZipfianPhrases(file, 20000, 1.1, 4000);
+
+            // the exact count of every distinct phrase
+            Map<String, Long> exactCounts = new HashMap<>();
+            for (TopPhrases.Phrase phrase : new TopPhrases().find(file.toString(), 20000)) {
+                exactCounts.put(phrase.phrase, phrase.phraseCount);
+            }
+            List<Long> sortedCounts = new ArrayList<>(exactCounts.values());
+            sortedCounts.sort(Collections.reverseOrder());
+            // a phrase with this count or more belongs to the top 100, ties included
+            long threshold = sortedCounts.get(99);
+
+            Queue<TopPhrases.Phrase> results = topPhrases.findApproximate(file.toString(), 100, 0.001);
+            assertEquals(100, results.size());
+
+            int correct = 0;
+            for (TopPhrases.Phrase phrase : results) {
+                long exact = exactCounts.get(phrase.phrase);
+                // the real count is always within the error bound
+                assertTrue(phrase.phraseCount >= exact && phrase.phraseCount - phrase.error <= exact);
+                if (exact >= threshold) {
+                    correct++;
+                }
+            }
+            long relevant = sortedCounts.stream().filter(count -> count >= threshold).count();
+            double precision = correct / (double) results.size();
+            double recall = correct / (double) Math.min(100, relevant);
+            logger.info("Precision: " + precision + ", recall: " + recall);
+            assertTrue(precision >= 0.95);
+            assertTrue(recall >= 0.95);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFindApproximate_invalid_epsilon() throws Exception {
+        assertTrue(topPhrases.findApproximate(testFile.toString(), 3, 0) == null);
+        assertTrue(topPhrases.findApproximate(testFile.toString(), 3, 1) == null);
+        // more counters than the table of SpaceSaving can hold
+        assertTrue(topPhrases.findApproximate(testFile.toString(), 3, 1e-9) == null);
+    }
+
+    // writes lines of 50 phrases where the frequency of phrase i is proportional to 1 / i^skew
+    private void writeZipfianPhrases(Path file, int distinct, double skew, int lines) throws Exception {
+        double[] cumulative = new double[distinct];
+        double sum = 0;
+        for (int i = 0; i < distinct; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int line = 0; line < lines; line++) {
+                for (int i = 0; i < 50; i++) {
+                    int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                    int phrase = index >= 0 ? index : -index - 1;
+                    writer.write((i > 0 ? "|" : "") + "phrase " + phrase);
+                }
+                writer.write("\n");
+            }
+        }
+    }
+
+    private void writeRandomPhrases(Path file) throws Exception {
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int line = 0; line < 2000; line++) {
+                for (int i = 0; i < 50; i++) {
+                    // a few phrases are much more frequent than the others
+                    int phrase = random.nextInt(1 + random.nextInt(1000));
+                    writer.write((i > 0 ? "|" : "") + "phrase " + phrase);
+                }
+                writer.write("\n");
+            }
+        }
+    }
+
+    private List<Long> counts(Queue<TopPhrases.Phrase> results) {
+        List<Long> counts = new ArrayList<>();
+        while (!results.isEmpty()) {
+            counts.add(results.poll().phraseCount);
+        }
+        return counts;
+    }
+}